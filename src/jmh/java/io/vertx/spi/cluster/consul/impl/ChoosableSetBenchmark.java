@@ -0,0 +1,55 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ChoosableSet#choose()} (i.e. the round robin of every point-to-point event bus send) when the
+ * subscribers of a single address are chosen by 8 / 32 / 128 threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChoosableSetBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int subscribers;
+
+    private ChoosableSet<String> set;
+
+    @Setup
+    public void setUp() {
+        Object[] values = new Object[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            values[i] = "node-" + i;
+        }
+        set = ChoosableSet.of(values, null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String choose8Threads() {
+        return set.choose();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String choose32Threads() {
+        return set.choose();
+    }
+
+    @Benchmark
+    @Threads(128)
+    public String choose128Threads() {
+        return set.choose();
+    }
+}
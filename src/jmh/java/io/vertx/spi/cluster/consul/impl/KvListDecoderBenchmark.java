@@ -0,0 +1,88 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.consul.KeyValue;
+import io.vertx.ext.consul.KeyValueList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocations (run with the gc profiler, i.e. {@code gc.alloc.rate.norm}) and time of decoding a consul KV list response:
+ * {@link KvListDecoder} vs the path it has replaced, i.e. a json tree turned into {@link KeyValueList} of
+ * {@link KeyValue}s with base64-decoded string values and keys stripped by {@code String#replace}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KvListDecoderBenchmark {
+
+    private static final String PREFIX = "__vertx.syncMaps/__vertx.haInfo/";
+
+    @Param({"1000", "10000"})
+    private int keys;
+
+    private Buffer body;
+
+    @Setup
+    public void setUp() {
+        JsonArray entries = new JsonArray();
+        for (int i = 0; i < keys; i++) {
+            String value = "{\"verticles\":[],\"group\":\"__DEFAULT__\",\"server_id\":{\"host\":\"10.0.0." + (i % 256)
+                    + "\",\"port\":" + (40000 + i % 1000) + "}}";
+            entries.add(new JsonObject()
+                    .put("LockIndex", 0)
+                    .put("Key", PREFIX + "node-" + i)
+                    .put("Flags", 0)
+                    .put("Value", Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)))
+                    .put("CreateIndex", i + 1)
+                    .put("ModifyIndex", i + 1));
+        }
+        body = entries.toBuffer();
+    }
+
+    @Benchmark
+    public int streamingDecoder(Blackhole blackhole) throws IOException {
+        return KvListDecoder.decode(body, PREFIX.length(), (key, value, modifyIndex, session) -> {
+            blackhole.consume(key);
+            blackhole.consume(value);
+            blackhole.consume(modifyIndex);
+        });
+    }
+
+    @Benchmark
+    public int keyValueList(Blackhole blackhole) {
+        JsonArray entries = body.toJsonArray();
+        List<KeyValue> list = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            JsonObject entry = entries.getJsonObject(i);
+            String value = entry.getString("Value");
+            list.add(new KeyValue()
+                    .setKey(entry.getString("Key"))
+                    .setValue(value == null ? null : new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8))
+                    .setModifyIndex(entry.getLong("ModifyIndex")));
+        }
+        KeyValueList keyValueList = new KeyValueList().setList(list);
+        keyValueList.getList().forEach(keyValue -> {
+            blackhole.consume(keyValue.getKey().replace(PREFIX, ""));
+            blackhole.consume(keyValue.getValue());
+            blackhole.consume(keyValue.getModifyIndex());
+        });
+        return keyValueList.getList().size();
+    }
+}
@@ -0,0 +1,122 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.consul.ConsulClientOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying a watch result to a sync map of 1k / 10k / 100k keys: a state where a single key has changed (i.e.
+ * only that key gets re-applied by its modify index) vs the same state applied to an empty map (i.e. every key gets
+ * applied, which is what re-putting the whole state on every change amounts to).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyncMapApplyBenchmark {
+
+    private static final String MAP_NAME = "bench";
+    // modify index of the key that changes, fixed width -> it can be bumped right within the serialized state.
+    private static final long CHANGING_INDEX = 1_000_000_000L;
+    private static final String CHANGING_INDEX_FIELD = "\"ModifyIndex\":" + CHANGING_INDEX;
+
+    @Param({"1000", "10000", "100000"})
+    private int keys;
+
+    private Vertx vertx;
+    private ClusterEventDispatcher dispatcher;
+    private ConsulTxn txn;
+    private TxnBatcher txnBatcher;
+    private SyncMapLayout layout;
+    private ValueCodec valueCodec;
+    private ConsulSyncMap map;
+    private Buffer state;
+    // position of the changing key's modify index within the state.
+    private int changingIndexPosition;
+    private long changes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        dispatcher = new ClusterEventDispatcher();
+        // never sends anything: the benchmark doesn't write.
+        txn = new ConsulTxn(vertx, new ConsulClientOptions());
+        txnBatcher = new TxnBatcher(vertx, txn);
+        layout = new SyncMapLayout(1);
+        valueCodec = new ValueCodec(-1);
+        state = state(keys);
+        changingIndexPosition = state.toString(StandardCharsets.UTF_8.name()).indexOf(CHANGING_INDEX_FIELD)
+                + CHANGING_INDEX_FIELD.length() - String.valueOf(CHANGING_INDEX).length();
+        map = newMap();
+        apply(map, state);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        txnBatcher.close();
+        txn.close();
+        dispatcher.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    public int applyOneChangedKey() throws IOException {
+        // every invocation sees a newer modify index of the same key.
+        state.setString(changingIndexPosition, String.valueOf(CHANGING_INDEX + ++changes));
+        apply(map, state);
+        return map.size();
+    }
+
+    @Benchmark
+    public int applyAllKeys() throws IOException {
+        ConsulSyncMap empty = newMap();
+        apply(empty, state);
+        return empty.size();
+    }
+
+    private ConsulSyncMap newMap() {
+        return new ConsulSyncMap(MAP_NAME, layout, dispatcher.lane(MAP_NAME), txnBatcher, valueCodec, bucket -> state);
+    }
+
+    private static void apply(ConsulSyncMap map, Buffer state) throws IOException {
+        map.beginApply(0);
+        KvListDecoder.decode(state, SyncMapLayout.flatPrefix().length(),
+                (key, value, modifyIndex, session) -> map.applyEntry(key, value, modifyIndex));
+        map.endApply();
+    }
+
+    /**
+     * Builds a consul KV list response of the given number of haInfo-like entries.
+     */
+    private static Buffer state(int keys) {
+        JsonArray entries = new JsonArray();
+        for (int i = 0; i < keys; i++) {
+            String value = "{\"verticles\":[],\"group\":\"__DEFAULT__\",\"server_id\":{\"host\":\"10.0.0." + (i % 256)
+                    + "\",\"port\":" + (40000 + i % 1000) + "}}";
+            entries.add(new JsonObject()
+                    .put("LockIndex", 0)
+                    .put("Key", SyncMapLayout.flatPrefix() + MAP_NAME + "/node-" + i)
+                    .put("Flags", 0)
+                    .put("Value", Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)))
+                    .put("CreateIndex", i + 1)
+                    .put("ModifyIndex", i == 0 ? CHANGING_INDEX : i + 1));
+        }
+        return entries.toBuffer();
+    }
+}
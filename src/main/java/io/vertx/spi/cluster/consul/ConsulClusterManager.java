@@ -1,8 +1,9 @@
 package io.vertx.spi.cluster.consul;
 
-import io.reactivex.Observable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.Completable;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
@@ -13,19 +14,33 @@ import io.vertx.core.shareddata.Lock;
 import io.vertx.core.spi.cluster.AsyncMultiMap;
 import io.vertx.core.spi.cluster.ClusterManager;
 import io.vertx.core.spi.cluster.NodeListener;
+import io.vertx.ext.consul.CheckOptions;
+import io.vertx.ext.consul.CheckStatus;
 import io.vertx.ext.consul.ConsulClientOptions;
-import io.vertx.ext.consul.ServiceList;
+import io.vertx.ext.consul.ServiceEntryList;
 import io.vertx.ext.consul.ServiceOptions;
 import io.vertx.reactivex.ext.consul.ConsulClient;
-import io.vertx.reactivex.ext.consul.Watch;
-import io.vertx.spi.cluster.consul.impl.ConsulSyncMap;
+import io.vertx.spi.cluster.consul.impl.ClusterEventDispatcher;
+import io.vertx.spi.cluster.consul.impl.ConsulAsyncMultiMap;
+import io.vertx.spi.cluster.consul.impl.ClusterMembership;
+import io.vertx.spi.cluster.consul.impl.ConsulClusterMetrics;
+import io.vertx.spi.cluster.consul.impl.ConsulSession;
+import io.vertx.spi.cluster.consul.impl.ConsulSyncMapRegistry;
+import io.vertx.spi.cluster.consul.impl.ConsulTxn;
+import io.vertx.spi.cluster.consul.impl.Heartbeat;
+import io.vertx.spi.cluster.consul.impl.MembershipWatch;
+import io.vertx.spi.cluster.consul.impl.NodeInfo;
+import io.vertx.spi.cluster.consul.impl.TxnBatcher;
+import io.vertx.spi.cluster.consul.impl.ValueCodec;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Cluster manager that uses Consul. See README for more details.
@@ -43,49 +58,92 @@ public class ConsulClusterManager implements ClusterManager {
 
     private static final Logger log = LoggerFactory.getLogger(ConsulClusterManager.class);
     private static final String COMMON_NODE_TAG = "vertx-consul-clustering";
+    // all the nodes are registered under the same service so that membership can be watched by a single health query.
+    private static final String CLUSTER_SERVICE_NAME = "vertx-consul-cluster";
+    private static final String HA_INFO_MAP_NAME = "__vertx.haInfo";
 
     private Vertx vertx;
     private io.vertx.reactivex.core.Vertx rxVertx;
     private ConsulClient consulClient;
     private ServiceOptions serviceOptions;
     private ConsulClientOptions consulClientOptions;
+    private final ConsulClusterManagerOptions options;
 
     private volatile boolean active;
 
     private NodeListener nodeListener;
     private final String nodeId;
-    private List<String> nodes;
+    private final NodeInfo localNodeInfo;
+    private final ClusterMembership membership = new ClusterMembership();
+    private MembershipWatch membershipWatch;
+    private ClusterEventDispatcher dispatcher;
+    private ClusterEventDispatcher.Lane membershipLane;
+    private long membershipIndex;
 
-    private ConsulSyncMap consulSyncMap;
+    private ConsulSyncMapRegistry syncMaps;
+    private final Map<String, ConsulAsyncMultiMap<?, ?>> multiMaps = new ConcurrentHashMap<>();
+    private Heartbeat heartbeat;
+    // holds the node's event bus subscriptions.
+    private ConsulSession session;
+    private ConsulTxn txn;
+    private TxnBatcher txnBatcher;
+    // shared by the sync maps and the multimaps.
+    private ValueCodec valueCodec;
+    private final ConsulClusterMetrics metrics = new ConsulClusterMetrics();
+    // time (ms) the latest membership view has been received at, only touched on the membership lane (once joined).
+    private long lastViewAt;
 
     public ConsulClusterManager(ServiceOptions serviceOptions) {
         log.trace("Initializing ConsulClusterManager with serviceOptions: '{}' by using default ConsulClientOptions.", serviceOptions.toJson().encodePrettily());
         this.serviceOptions = serviceOptions;
         consulClientOptions = new ConsulClientOptions();
+        this.options = new ConsulClusterManagerOptions();
         this.nodeId = UUID.randomUUID().toString();
         serviceOptions.setId(nodeId);
-        serviceOptions.setName(buildServiceName(serviceOptions.getName(), nodeId));
-        addTag(serviceOptions);
+        this.localNodeInfo = buildLocalNodeInfo(serviceOptions);
+        addTags(serviceOptions);
+        serviceOptions.setName(CLUSTER_SERVICE_NAME);
+        addCheck(serviceOptions);
     }
 
     public ConsulClusterManager(ServiceOptions serviceOptions, ConsulClientOptions clientOptions) {
-        log.trace("Initializing ConsulClusterManager with serviceOptions: '{}'. ConsulClientOptions are: '{}'.",
+        this(serviceOptions, clientOptions, new ConsulClusterManagerOptions());
+    }
+
+    public ConsulClusterManager(ServiceOptions serviceOptions, ConsulClientOptions clientOptions, ConsulClusterManagerOptions options) {
+        log.trace("Initializing ConsulClusterManager with serviceOptions: '{}'. ConsulClientOptions are: '{}'. Options are: '{}'.",
                 serviceOptions.toJson().encodePrettily(),
-                clientOptions.toJson().encode());
+                clientOptions.toJson().encode(),
+                options.toJson().encode());
         this.serviceOptions = serviceOptions;
         this.consulClientOptions = clientOptions;
+        this.options = new ConsulClusterManagerOptions(options);
         this.nodeId = UUID.randomUUID().toString();
         serviceOptions.setId(nodeId);
-        serviceOptions.setName(buildServiceName(serviceOptions.getName(), nodeId));
+        this.localNodeInfo = buildLocalNodeInfo(serviceOptions);
         // is it safe ??? so far just a dummy implementation.
-        addTag(serviceOptions);
+        addTags(serviceOptions);
+        serviceOptions.setName(CLUSTER_SERVICE_NAME);
+        addCheck(serviceOptions);
     }
 
     private void init() {
         log.trace("Initializing the consul client...");
         this.rxVertx = io.vertx.reactivex.core.Vertx.newInstance(vertx);
-        consulClient = ConsulClient.create(rxVertx);
-        initNodes();
+        consulClient = ConsulClient.create(rxVertx, consulClientOptions);
+        // blocking queries return at least once per check TTL -> that's how often the nodes are confirmed to be alive.
+        membershipWatch = new MembershipWatch(rxVertx, consulClient, CLUSTER_SERVICE_NAME, COMMON_NODE_TAG,
+                options.getCheckTtlMs() + "ms", options.getMembershipCoalescingWindowMs());
+        txn = new ConsulTxn(vertx, consulClientOptions, options.getTxnTimeoutMs());
+        txnBatcher = new TxnBatcher(vertx, txn);
+        metrics.txnOpsFailed(txnBatcher::failedCount);
+        metrics.multiMapReadConsistency(options.getMultiMapBootstrapConsistency(), options.getMultiMapWatchConsistency());
+        valueCodec = new ValueCodec(options.getValueCompressionThreshold());
+        heartbeat = new Heartbeat(rxVertx, consulClient, checkId(), options.getHeartbeatIntervalMs(), options.getHeartbeatJitterMs(), metrics);
+        // session is checked once per check TTL, i.e. as often as Consul may invalidate it.
+        session = new ConsulSession(rxVertx, consulClient, "vertx-node-" + nodeId, checkId(), options.getCheckTtlMs());
+        dispatcher = new ClusterEventDispatcher();
+        membershipLane = dispatcher.lane("membership");
     }
 
     @Override
@@ -96,8 +154,26 @@ public class ConsulClusterManager implements ClusterManager {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <K, V> void getAsyncMultiMap(String name, Handler<AsyncResult<AsyncMultiMap<K, V>>> asyncResultHandler) {
         log.trace("Getting async multimap by name: '{}'", name);
+        Context context = vertx.getOrCreateContext();
+        ConsulAsyncMultiMap<K, V> multiMap;
+        try {
+            multiMap = (ConsulAsyncMultiMap<K, V>) multiMaps.computeIfAbsent(name, mapName ->
+                    new ConsulAsyncMultiMap<>(mapName, vertx, consulClientOptions, options, dispatcher, txn, txnBatcher,
+                            session, valueCodec, metrics));
+        } catch (IllegalArgumentException e) {
+            context.runOnContext(event -> asyncResultHandler.handle(Future.failedFuture(e)));
+            return;
+        }
+        // near-cache gets warmed up before the map is handed over.
+        multiMap.init().subscribe(
+                () -> context.runOnContext(event -> asyncResultHandler.handle(Future.succeededFuture(multiMap))),
+                throwable -> {
+                    log.error("Multimap: '{}' couldn't be initialized. Details: '{}'", name, throwable.getMessage());
+                    context.runOnContext(event -> asyncResultHandler.handle(Future.failedFuture(throwable)));
+                });
     }
 
     @Override
@@ -108,7 +184,7 @@ public class ConsulClusterManager implements ClusterManager {
     @Override
     public Map<String, String> getSyncMap(String name) {
         log.trace("Getting sync map by name: '{}'", name);
-        return consulSyncMap;
+        return syncMaps.getMap(name);
     }
 
     @Override
@@ -127,15 +203,21 @@ public class ConsulClusterManager implements ClusterManager {
         return nodeId;
     }
 
+    /**
+     * Lock-free read of the current membership snapshot. While a node listener is being notified about a join or leave
+     * this returns exactly the snapshot that event has produced.
+     */
     @Override
     public List<String> getNodes() {
-        return nodes;
+        return membership.snapshot().nodes();
     }
 
     @Override
     public void nodeListener(NodeListener listener) {
         log.trace("Initializing the node listener...");
-        // TODO:
+        // Contract - only 1. is fully met: events are delivered in index order per node, yet nodes may observe different
+        // interleavings of joins and leaves as blocking queries skip indexes (see ClusterMembership) -> 2. and 3. hold
+        // only for nodes that happen to observe the same views.
         /*
          * 1. Whenever a node joins or leaves the cluster the registered NodeListener (if any) MUST be called with the
          * appropriate join or leave event.
@@ -148,35 +230,109 @@ public class ConsulClusterManager implements ClusterManager {
         registerWatcher();
     }
 
+    /**
+     * Joins the cluster without blocking: the membership is fetched, {@code __vertx.haInfo} cache is warmed up and the
+     * node gets registered concurrently. The result handler is called once all three phases are done.
+     */
     @Override
     public synchronized void join(Handler<AsyncResult<Void>> resultHandler) {
-        vertx.executeBlocking(future -> {
-            log.trace("'{}' is trying to join the cluster.", serviceOptions.getId());
-            if (!active) {
-                consulSyncMap = ConsulSyncMap.getInstance(rxVertx, consulClient);
-                active = true;
-                consulClient.registerService(serviceOptions, result -> {
-                    if (result.succeeded()) {
-                        future.complete();
-                    } else {
-                        future.fail(result.cause());
-                    }
-                });
-            } else {
-                log.warn("'{}' is NOT active.", serviceOptions.getId());
-            }
-        }, resultHandler);
+        log.trace("'{}' is trying to join the cluster.", serviceOptions.getId());
+        Context context = vertx.getOrCreateContext();
+        if (active) {
+            log.warn("'{}' is already active.", serviceOptions.getId());
+            context.runOnContext(event -> resultHandler.handle(Future.succeededFuture()));
+            return;
+        }
+        active = true;
+        syncMaps = new ConsulSyncMapRegistry(rxVertx, consulClientOptions, options, dispatcher, txn, txnBatcher, valueCodec, metrics);
+        // haInfo map is created upfront so that it gets warmed up along with the registry. Its entries are plain (not held
+        // by the session): HA failover reads the haInfo of a failed node after the node has left the membership.
+        syncMaps.getMap(HA_INFO_MAP_NAME);
+        long joinStart = System.nanoTime();
+        Completable.mergeArray(
+                timed("membership", initNodes()),
+                timed("haInfo cache", syncMaps.init()),
+                // session is bound to the service's check -> it can only be created once the service has been registered.
+                timed("service registration", consulClient.rxRegisterService(serviceOptions)
+                        .andThen(session.create())
+                        .doOnComplete(heartbeat::start)))
+                .subscribe(
+                        () -> {
+                            log.info("'{}' has joined the cluster in '{}' ms.", nodeId, elapsedMillis(joinStart));
+                            context.runOnContext(event -> resultHandler.handle(Future.succeededFuture()));
+                        },
+                        throwable -> {
+                            log.error("'{}' couldn't join the cluster. Details: '{}'", nodeId, throwable.getMessage());
+                            active = false;
+                            heartbeat.stop();
+                            syncMaps.close();
+                            // whatever the join has managed to register in Consul so far is removed before the failure
+                            // gets reported, the clean-up is best effort.
+                            Completable.mergeArrayDelayError(
+                                    consulClient.rxDeregisterService(serviceOptions.getId()),
+                                    session.destroy())
+                                    .doOnError(cleanUpError -> log.warn("'{}' couldn't clean up after the failed join. Details: '{}'",
+                                            nodeId, cleanUpError.getMessage()))
+                                    .onErrorComplete()
+                                    .subscribe(() -> context.runOnContext(event -> resultHandler.handle(Future.failedFuture(throwable))));
+                        });
     }
 
+    /**
+     * Leaves the cluster in a single round trip: the node gets deregistered, its ephemeral keys (i.e. its
+     * {@code __vertx.haInfo} entry) get deleted by a single transaction and its session gets destroyed at the same time. Every watch and timer the
+     * manager owns is stopped right away.
+     */
     @Override
     public synchronized void leave(Handler<AsyncResult<Void>> resultHandler) {
         log.trace("'{}' is trying to leave the cluster.", serviceOptions.getId());
-        if (active) {
-            active = false;
-            consulClient.deregisterService(serviceOptions.getId(), resultHandler);
-        } else {
+        Context context = vertx.getOrCreateContext();
+        if (!active) {
             log.warn("'{}' is NOT active.", serviceOptions.getId());
+            context.runOnContext(event -> resultHandler.handle(Future.succeededFuture()));
+            return;
+        }
+        active = false;
+        long leaveStart = System.nanoTime();
+        stopWatchesAndTimers();
+        Completable.mergeArrayDelayError(
+                consulClient.rxDeregisterService(serviceOptions.getId()),
+                deleteEphemeralKeys(),
+                session.destroy())
+                .doFinally(() -> {
+                    txnBatcher.close();
+                    txn.close();
+                    dispatcher.close();
+                })
+                .subscribe(
+                        () -> {
+                            log.info("'{}' has left the cluster in '{}' ms.", nodeId, elapsedMillis(leaveStart));
+                            context.runOnContext(event -> resultHandler.handle(Future.succeededFuture()));
+                        },
+                        throwable -> {
+                            log.error("'{}' couldn't leave the cluster cleanly. Details: '{}'", nodeId, throwable.getMessage());
+                            context.runOnContext(event -> resultHandler.handle(Future.failedFuture(throwable)));
+                        });
+    }
+
+    private void stopWatchesAndTimers() {
+        membershipWatch.stop();
+        heartbeat.stop();
+        if (syncMaps != null) {
+            syncMaps.close();
+        }
+        multiMaps.values().forEach(ConsulAsyncMultiMap::close);
+        multiMaps.clear();
+    }
+
+    private Completable deleteEphemeralKeys() {
+        if (syncMaps == null) {
+            return Completable.complete();
         }
+        // goes through the batcher -> it is applied after (and most likely along with) the pending writes of this node.
+        Completable deletion = txnBatcher.submit(ConsulTxn.delete(syncMaps.getMap(HA_INFO_MAP_NAME).keyPath(nodeId))).toCompletable();
+        txnBatcher.flush();
+        return deletion;
     }
 
     @Override
@@ -184,59 +340,153 @@ public class ConsulClusterManager implements ClusterManager {
         return active;
     }
 
+    /**
+     * Resolves node metadata (event bus host/port, HA group, startup epoch) from the current membership snapshot, i.e.
+     * without any remote call.
+     *
+     * @return metadata of the given node, null if the node isn't a member of the cluster.
+     */
+    public NodeInfo getNodeInfo(String nodeId) {
+        return membership.snapshot().nodeInfo(nodeId);
+    }
+
+    /**
+     * @return runtime metrics of this cluster manager.
+     */
+    public ConsulClusterMetrics metrics() {
+        return metrics;
+    }
+
     // tricky !!! watchers are always executed  within the event loop context !!!
     // nodeAdded() call muset NEVER be called within event loop context !!!.
+    // -> every membership change is handed off to the dispatcher's membership lane which preserves the order of events.
     private void registerWatcher() {
-        Executor watcherThreadExecutor = Executors.newFixedThreadPool(5);
-        Watch.services(rxVertx).setHandler(event -> {
+        membershipWatch.setHandler(event -> {
             if (event.succeeded()) {
-                Observable.fromIterable(event.nextResult().getList())
-                        .subscribeOn(Schedulers.from(watcherThreadExecutor))
-                        .filter(service -> service.getTags().contains(COMMON_NODE_TAG))
-                        .map(service -> getNodeIdOutOfServiceName(service.getName()))
-                        .filter(receivedNodeId -> !receivedNodeId.equals(nodeId))
-                        .doOnNext(newNodeId -> log.trace("New node: '{}' was added to consul", newNodeId))
-                        .subscribe(
-                                newNodeId -> {
-                                    nodes.add(newNodeId); // TODO: is this necessary.
-                                    // not an event loop context since we subscribe the observable flow on vert.x-worker-thread (RxHelper.blockingScheduler(vertx))
-                                    log.trace("Adding new nodeId: '{}' to nodeListener.", newNodeId);
-                                    nodeListener.nodeAdded(newNodeId);
-                                },
-                                throwable -> log.error("Error occurred while processing new node ids in the cluster. Details: {}", throwable.getMessage()));
+                ServiceEntryList serviceEntryList = event.result();
+                // the whole view is dispatched (not a delta) so that a rejected task gets caught up by the next one.
+                membershipLane.dispatch(() -> applyMembership(serviceEntryList));
             } else {
                 log.error("Couldn't register watcher for service: '{}'. Details: '{}'", nodeId, event.cause().getMessage());
             }
-        }).start();
-    }
-
-    private void initNodes() {
-        // so far we actually grab a list of registered services within entire datacenter.
-        log.trace("Getting all the nodes -> i.e. all registered service within entire consul dc...");
-        nodes = consulClient.rxCatalogServices()
-                .toObservable()
-                .flatMapIterable(ServiceList::getList)
-                .filter(service -> service.getTags().contains(COMMON_NODE_TAG))
-                .map(service -> getNodeIdOutOfServiceName(service.getName()))
-                .doOnNext(s -> log.trace("Received: '{}' from Consul.", s))
-                .toList()
+        }).start(membershipIndex);
+    }
+
+    private void applyMembership(ServiceEntryList serviceEntryList) {
+        ClusterMembership.Delta delta = membership.update(serviceEntryList.getIndex(), toNodeInfos(serviceEntryList));
+        trackFailureDetection(delta);
+        if (!delta.isEmpty()) {
+            log.trace("Cluster membership has changed: '{}'", delta);
+            notifyNodeListener(delta);
+        }
+    }
+
+    /**
+     * Records the upper bound of the failure detection latency of every node gone (see
+     * {@link ConsulClusterMetrics#nodeLeft(long)}): a node gone has been listed by the previous view, i.e. it was alive a
+     * check TTL before that view at the latest.
+     */
+    private void trackFailureDetection(ClusterMembership.Delta delta) {
+        long now = System.currentTimeMillis();
+        if (!delta.left().isEmpty() && lastViewAt > 0) {
+            long bound = now - lastViewAt + options.getCheckTtlMs();
+            log.trace("Node(s): '{}' have left the membership view, failure detected within '{}' ms.", delta.left(), bound);
+            delta.left().forEach(leftNodeId -> metrics.nodeLeft(bound));
+        }
+        lastViewAt = now;
+    }
+
+    private void notifyNodeListener(ClusterMembership.Delta delta) {
+        try {
+            delta.left().stream()
+                    .filter(leftNodeId -> !leftNodeId.equals(nodeId))
+                    .forEach(leftNodeId -> {
+                        log.trace("Removing nodeId: '{}' from nodeListener.", leftNodeId);
+                        nodeListener.nodeLeft(leftNodeId);
+                    });
+            delta.joined().stream()
+                    .filter(newNodeId -> !newNodeId.equals(nodeId))
+                    .forEach(newNodeId -> {
+                        log.trace("Adding new nodeId: '{}' to nodeListener.", newNodeId);
+                        nodeListener.nodeAdded(newNodeId);
+                    });
+        } catch (RuntimeException e) {
+            log.error("Error occurred while processing node changes in the cluster. Details: {}", e.getMessage());
+        }
+    }
+
+    private Completable initNodes() {
+        log.trace("Getting all the nodes -> i.e. all healthy instances of: '{}' service...", CLUSTER_SERVICE_NAME);
+        return membershipWatch.fetch()
+                .doOnSuccess(serviceEntryList -> {
+                    membershipIndex = serviceEntryList.getIndex();
+                    lastViewAt = System.currentTimeMillis();
+                    membership.update(serviceEntryList.getIndex(), toNodeInfos(serviceEntryList));
+                    log.trace("Node are: '{}'", membership.snapshot());
+                })
                 .doOnError(throwable -> log.error("Error occurred while getting services: '{}'", throwable.getMessage()))
-                .blockingGet();
-        log.trace("Node are: '{}'", nodes);
+                .toCompletable();
     }
 
-    private void addTag(ServiceOptions options) {
-        List<String> currentTags = options.getTags();
-        List<String> newTags = new ArrayList<>(currentTags);
-        newTags.add(ConsulClusterManager.COMMON_NODE_TAG);
-        options.setTags(newTags);
+    /**
+     * Reports how long the given bootstrap phase takes.
+     */
+    private Completable timed(String phase, Completable completable) {
+        return Completable.defer(() -> {
+            long start = System.nanoTime();
+            return completable.doOnComplete(() -> log.info("Bootstrap phase: '{}' of '{}' took '{}' ms.", phase, nodeId, elapsedMillis(start)));
+        });
+    }
+
+    private long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 
-    private String buildServiceName(String serviceName, String nodeId) {
-        return serviceName + "[" + nodeId + "]";
+    private Map<String, NodeInfo> toNodeInfos(ServiceEntryList serviceEntryList) {
+        // tag filtering is done by consul -> the node id is the service id, metadata is in the service tags.
+        Map<String, NodeInfo> nodeInfos = serviceEntryList.getList()
+                .stream()
+                .map(serviceEntry -> NodeInfo.fromService(serviceEntry.getService()))
+                .collect(Collectors.toMap(NodeInfo::nodeId, Function.identity(), (first, second) -> first));
+        // the local node is a member as long as it is active, even if consul hasn't caught up with its registration yet.
+        if (active) {
+            nodeInfos.putIfAbsent(nodeId, localNodeInfo);
+        }
+        return nodeInfos;
+    }
+
+    private NodeInfo buildLocalNodeInfo(ServiceOptions serviceOptions) {
+        String host = options.getEventBusHost() != null ? options.getEventBusHost() : serviceOptions.getAddress();
+        int port = options.getEventBusPort() >= 0 ? options.getEventBusPort() : serviceOptions.getPort();
+        return new NodeInfo(nodeId, host, port, options.getHaGroup(), System.currentTimeMillis());
+    }
+
+    /**
+     * Attaches a TTL check to the node's service -> a node that stops sending heartbeats is marked as failed by Consul
+     * and is no longer returned as a healthy cluster member.
+     */
+    private void addCheck(ServiceOptions serviceOptions) {
+        serviceOptions.setCheckOptions(new CheckOptions()
+                .setName("Vert.x node heartbeat")
+                .setTtl(options.getCheckTtlMs() + "ms")
+                .setDeregisterAfter(options.getDeregisterCriticalAfter())
+                .setStatus(CheckStatus.PASSING));
     }
 
-    private String getNodeIdOutOfServiceName(String serviceName) {
-        return serviceName.substring(serviceName.lastIndexOf('[') + 1, serviceName.length() - 1);
+    // id consul assigns to the check that is embedded into service registration.
+    private String checkId() {
+        return "service:" + nodeId;
+    }
+
+    private void addTags(ServiceOptions options) {
+        List<String> currentTags = options.getTags();
+        List<String> newTags = currentTags == null ? new ArrayList<>() : new ArrayList<>(currentTags);
+        newTags.add(ConsulClusterManager.COMMON_NODE_TAG);
+        // original service name is kept as a tag since the service name is shared by all the nodes.
+        if (options.getName() != null) {
+            newTags.add(options.getName());
+        }
+        newTags.addAll(localNodeInfo.toTags());
+        options.setTags(newTags);
     }
 }
@@ -0,0 +1,369 @@
+package io.vertx.spi.cluster.consul;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Objects;
+
+/**
+ * Tuning options of {@link ConsulClusterManager}. Defaults are meant to be reasonable for most of the clusters.
+ */
+public class ConsulClusterManagerOptions {
+
+    public static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 2000;
+    public static final long DEFAULT_HEARTBEAT_JITTER_MS = 250;
+    public static final long DEFAULT_CHECK_TTL_MS = 6000;
+    public static final String DEFAULT_DEREGISTER_CRITICAL_AFTER = "1m";
+    public static final long DEFAULT_MEMBERSHIP_COALESCING_WINDOW_MS = 0;
+    public static final long DEFAULT_SYNC_MAP_SNAPSHOT_INTERVAL_MS = 10000;
+    public static final int DEFAULT_SYNC_MAP_BUCKETS = 1;
+    public static final int MAX_SYNC_MAP_BUCKETS = 256;
+    public static final int DEFAULT_VALUE_COMPRESSION_THRESHOLD = -1;
+    public static final ReadConsistency DEFAULT_SYNC_MAP_BOOTSTRAP_CONSISTENCY = ReadConsistency.DEFAULT;
+    public static final ReadConsistency DEFAULT_SYNC_MAP_WATCH_CONSISTENCY = ReadConsistency.DEFAULT;
+    public static final ReadConsistency DEFAULT_MULTI_MAP_BOOTSTRAP_CONSISTENCY = ReadConsistency.DEFAULT;
+    public static final ReadConsistency DEFAULT_MULTI_MAP_WATCH_CONSISTENCY = ReadConsistency.DEFAULT;
+    public static final long DEFAULT_MAX_STALENESS_MS = 5000;
+    public static final long DEFAULT_SUBSCRIPTION_COALESCING_WINDOW_MS = 2;
+    public static final long DEFAULT_TXN_TIMEOUT_MS = 10000;
+
+    private long heartbeatIntervalMs = DEFAULT_HEARTBEAT_INTERVAL_MS;
+    private long heartbeatJitterMs = DEFAULT_HEARTBEAT_JITTER_MS;
+    private long checkTtlMs = DEFAULT_CHECK_TTL_MS;
+    private String deregisterCriticalAfter = DEFAULT_DEREGISTER_CRITICAL_AFTER;
+    private long membershipCoalescingWindowMs = DEFAULT_MEMBERSHIP_COALESCING_WINDOW_MS;
+    private String eventBusHost;
+    private int eventBusPort = -1;
+    private String haGroup;
+    private String syncMapSnapshotPath;
+    private long syncMapSnapshotIntervalMs = DEFAULT_SYNC_MAP_SNAPSHOT_INTERVAL_MS;
+    private int syncMapBuckets = DEFAULT_SYNC_MAP_BUCKETS;
+    private int valueCompressionThreshold = DEFAULT_VALUE_COMPRESSION_THRESHOLD;
+    private ReadConsistency syncMapBootstrapConsistency = DEFAULT_SYNC_MAP_BOOTSTRAP_CONSISTENCY;
+    private ReadConsistency syncMapWatchConsistency = DEFAULT_SYNC_MAP_WATCH_CONSISTENCY;
+    private ReadConsistency multiMapBootstrapConsistency = DEFAULT_MULTI_MAP_BOOTSTRAP_CONSISTENCY;
+    private ReadConsistency multiMapWatchConsistency = DEFAULT_MULTI_MAP_WATCH_CONSISTENCY;
+    private long maxStalenessMs = DEFAULT_MAX_STALENESS_MS;
+    private long subscriptionCoalescingWindowMs = DEFAULT_SUBSCRIPTION_COALESCING_WINDOW_MS;
+    private long txnTimeoutMs = DEFAULT_TXN_TIMEOUT_MS;
+
+    public ConsulClusterManagerOptions() {
+    }
+
+    public ConsulClusterManagerOptions(ConsulClusterManagerOptions other) {
+        this.heartbeatIntervalMs = other.heartbeatIntervalMs;
+        this.heartbeatJitterMs = other.heartbeatJitterMs;
+        this.checkTtlMs = other.checkTtlMs;
+        this.deregisterCriticalAfter = other.deregisterCriticalAfter;
+        this.membershipCoalescingWindowMs = other.membershipCoalescingWindowMs;
+        this.eventBusHost = other.eventBusHost;
+        this.eventBusPort = other.eventBusPort;
+        this.haGroup = other.haGroup;
+        this.syncMapSnapshotPath = other.syncMapSnapshotPath;
+        this.syncMapSnapshotIntervalMs = other.syncMapSnapshotIntervalMs;
+        this.syncMapBuckets = other.syncMapBuckets;
+        this.valueCompressionThreshold = other.valueCompressionThreshold;
+        this.syncMapBootstrapConsistency = other.syncMapBootstrapConsistency;
+        this.syncMapWatchConsistency = other.syncMapWatchConsistency;
+        this.multiMapBootstrapConsistency = other.multiMapBootstrapConsistency;
+        this.multiMapWatchConsistency = other.multiMapWatchConsistency;
+        this.maxStalenessMs = other.maxStalenessMs;
+        this.subscriptionCoalescingWindowMs = other.subscriptionCoalescingWindowMs;
+        this.txnTimeoutMs = other.txnTimeoutMs;
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    /**
+     * Sets how often the node reports to Consul that it is alive. Has to be (noticeably) less than the check TTL.
+     */
+    public ConsulClusterManagerOptions setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+        if (heartbeatIntervalMs < 1) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive.");
+        }
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        return this;
+    }
+
+    public long getHeartbeatJitterMs() {
+        return heartbeatJitterMs;
+    }
+
+    /**
+     * Sets the max random deviation of the heartbeat interval so that the nodes don't hit Consul all at once.
+     */
+    public ConsulClusterManagerOptions setHeartbeatJitterMs(long heartbeatJitterMs) {
+        if (heartbeatJitterMs < 0) {
+            throw new IllegalArgumentException("Heartbeat jitter must not be negative.");
+        }
+        this.heartbeatJitterMs = heartbeatJitterMs;
+        return this;
+    }
+
+    public long getCheckTtlMs() {
+        return checkTtlMs;
+    }
+
+    /**
+     * Sets the TTL of the node's health check, i.e. how long it takes Consul to mark a node that stopped sending
+     * heartbeats as failed.
+     */
+    public ConsulClusterManagerOptions setCheckTtlMs(long checkTtlMs) {
+        if (checkTtlMs < 1) {
+            throw new IllegalArgumentException("Check TTL must be positive.");
+        }
+        this.checkTtlMs = checkTtlMs;
+        return this;
+    }
+
+    public String getDeregisterCriticalAfter() {
+        return deregisterCriticalAfter;
+    }
+
+    /**
+     * Sets the timeout (i.e. "90s", "1m") after which Consul removes a failed node from the catalog.
+     */
+    public ConsulClusterManagerOptions setDeregisterCriticalAfter(String deregisterCriticalAfter) {
+        this.deregisterCriticalAfter = deregisterCriticalAfter;
+        return this;
+    }
+
+    public long getMembershipCoalescingWindowMs() {
+        return membershipCoalescingWindowMs;
+    }
+
+    /**
+     * Sets the window within which membership changes are merged into a single delta before it is applied. Useful during
+     * rolling deploys when lots of nodes join and leave at once. 0 (default) applies every change right away.
+     */
+    public ConsulClusterManagerOptions setMembershipCoalescingWindowMs(long membershipCoalescingWindowMs) {
+        if (membershipCoalescingWindowMs < 0) {
+            throw new IllegalArgumentException("Membership coalescing window must not be negative.");
+        }
+        this.membershipCoalescingWindowMs = membershipCoalescingWindowMs;
+        return this;
+    }
+
+    public String getEventBusHost() {
+        return eventBusHost;
+    }
+
+    /**
+     * Sets the event bus host published in node metadata. Defaults to the address of the service options.
+     */
+    public ConsulClusterManagerOptions setEventBusHost(String eventBusHost) {
+        this.eventBusHost = eventBusHost;
+        return this;
+    }
+
+    public int getEventBusPort() {
+        return eventBusPort;
+    }
+
+    /**
+     * Sets the event bus port published in node metadata. Defaults to the port of the service options.
+     */
+    public ConsulClusterManagerOptions setEventBusPort(int eventBusPort) {
+        this.eventBusPort = eventBusPort;
+        return this;
+    }
+
+    public String getHaGroup() {
+        return haGroup;
+    }
+
+    /**
+     * Sets the HA group published in node metadata.
+     */
+    public ConsulClusterManagerOptions setHaGroup(String haGroup) {
+        this.haGroup = haGroup;
+        return this;
+    }
+
+    public String getSyncMapSnapshotPath() {
+        return syncMapSnapshotPath;
+    }
+
+    /**
+     * Sets the file the state of the sync maps is periodically saved to. A restarted node loads it and catches up with
+     * Consul from the saved index instead of downloading all the maps before it can join. Null (default) disables snapshots.
+     */
+    public ConsulClusterManagerOptions setSyncMapSnapshotPath(String syncMapSnapshotPath) {
+        this.syncMapSnapshotPath = syncMapSnapshotPath;
+        return this;
+    }
+
+    public long getSyncMapSnapshotIntervalMs() {
+        return syncMapSnapshotIntervalMs;
+    }
+
+    /**
+     * Sets how often the sync map snapshot gets saved (only if the state has changed in the meantime).
+     */
+    public ConsulClusterManagerOptions setSyncMapSnapshotIntervalMs(long syncMapSnapshotIntervalMs) {
+        if (syncMapSnapshotIntervalMs < 1) {
+            throw new IllegalArgumentException("Sync map snapshot interval must be positive.");
+        }
+        this.syncMapSnapshotIntervalMs = syncMapSnapshotIntervalMs;
+        return this;
+    }
+
+    public int getSyncMapBuckets() {
+        return syncMapBuckets;
+    }
+
+    /**
+     * Sets the number of hash buckets the sync map entries are spread over. Every bucket is watched by its own blocking
+     * query, so a single change re-downloads 1/N of the data only. 1 (default) keeps all the entries under a single prefix.
+     * Entries stored by nodes of a single bucket are moved into the buckets on startup. All the nodes of a cluster must
+     * use the same number of buckets.
+     */
+    public ConsulClusterManagerOptions setSyncMapBuckets(int syncMapBuckets) {
+        if (syncMapBuckets < 1 || syncMapBuckets > MAX_SYNC_MAP_BUCKETS) {
+            throw new IllegalArgumentException("Number of sync map buckets must be within [1, " + MAX_SYNC_MAP_BUCKETS + "].");
+        }
+        this.syncMapBuckets = syncMapBuckets;
+        return this;
+    }
+
+    public int getValueCompressionThreshold() {
+        return valueCompressionThreshold;
+    }
+
+    /**
+     * Sets the min length (in bytes) of a cluster map value to get deflated before it is stored in Consul. Compressed
+     * values are marked by a header byte and decompressed transparently on reads, so nodes can be switched one by one
+     * (as long as all of them run a version that reads compressed values). -1 (default) disables compression.
+     */
+    public ConsulClusterManagerOptions setValueCompressionThreshold(int valueCompressionThreshold) {
+        if (valueCompressionThreshold < -1) {
+            throw new IllegalArgumentException("Value compression threshold must be either -1 or non negative.");
+        }
+        this.valueCompressionThreshold = valueCompressionThreshold;
+        return this;
+    }
+
+    public ReadConsistency getSyncMapBootstrapConsistency() {
+        return syncMapBootstrapConsistency;
+    }
+
+    /**
+     * Sets the consistency mode of the reads the sync map caches are warmed up with when the node joins. i.e.
+     * {@link ReadConsistency#STALE} spreads the load of lots of nodes bootstrapping at once over all the Consul servers,
+     * {@link ReadConsistency#CONSISTENT} is for critical bootstraps.
+     */
+    public ConsulClusterManagerOptions setSyncMapBootstrapConsistency(ReadConsistency syncMapBootstrapConsistency) {
+        this.syncMapBootstrapConsistency = Objects.requireNonNull(syncMapBootstrapConsistency);
+        return this;
+    }
+
+    public ReadConsistency getSyncMapWatchConsistency() {
+        return syncMapWatchConsistency;
+    }
+
+    /**
+     * Sets the consistency mode of the blocking queries that keep the sync map caches in sync with Consul.
+     */
+    public ConsulClusterManagerOptions setSyncMapWatchConsistency(ReadConsistency syncMapWatchConsistency) {
+        this.syncMapWatchConsistency = Objects.requireNonNull(syncMapWatchConsistency);
+        return this;
+    }
+
+    public ReadConsistency getMultiMapBootstrapConsistency() {
+        return multiMapBootstrapConsistency;
+    }
+
+    /**
+     * Sets the consistency mode of the reads the multimap (i.e. event bus subscriptions) near-caches are warmed up with.
+     * Independent of {@link #setSyncMapBootstrapConsistency(ReadConsistency)}: a stale subscription only misroutes a
+     * message, whereas sync maps (i.e. HA info) drive failover.
+     */
+    public ConsulClusterManagerOptions setMultiMapBootstrapConsistency(ReadConsistency multiMapBootstrapConsistency) {
+        this.multiMapBootstrapConsistency = Objects.requireNonNull(multiMapBootstrapConsistency);
+        return this;
+    }
+
+    public ReadConsistency getMultiMapWatchConsistency() {
+        return multiMapWatchConsistency;
+    }
+
+    /**
+     * Sets the consistency mode of the blocking queries that keep the multimap near-caches in sync with Consul.
+     */
+    public ConsulClusterManagerOptions setMultiMapWatchConsistency(ReadConsistency multiMapWatchConsistency) {
+        this.multiMapWatchConsistency = Objects.requireNonNull(multiMapWatchConsistency);
+        return this;
+    }
+
+    public long getMaxStalenessMs() {
+        return maxStalenessMs;
+    }
+
+    /**
+     * Sets how stale (i.e. how long ago the serving Consul server has been in contact with the leader) a
+     * {@link ReadConsistency#STALE} read of any cluster map (sync map or multimap) may be. Staler reads are retried in the default mode. 0 disables the bound.
+     */
+    public ConsulClusterManagerOptions setMaxStalenessMs(long maxStalenessMs) {
+        if (maxStalenessMs < 0) {
+            throw new IllegalArgumentException("Max staleness must not be negative.");
+        }
+        this.maxStalenessMs = maxStalenessMs;
+        return this;
+    }
+
+    public long getSubscriptionCoalescingWindowMs() {
+        return subscriptionCoalescingWindowMs;
+    }
+
+    /**
+     * Sets the window within which event bus subscriptions (i.e. multimap additions) are merged into as few Consul
+     * transactions as possible, a batch is submitted early once it is full. 0 submits every subscription on its own.
+     */
+    public ConsulClusterManagerOptions setSubscriptionCoalescingWindowMs(long subscriptionCoalescingWindowMs) {
+        if (subscriptionCoalescingWindowMs < 0) {
+            throw new IllegalArgumentException("Subscription coalescing window must not be negative.");
+        }
+        this.subscriptionCoalescingWindowMs = subscriptionCoalescingWindowMs;
+        return this;
+    }
+
+    public long getTxnTimeoutMs() {
+        return txnTimeoutMs;
+    }
+
+    /**
+     * Sets how long a Consul transaction (i.e. a batch of cluster map writes) may go without any response data before
+     * it fails. Writes of a timed out transaction may still have been committed.
+     */
+    public ConsulClusterManagerOptions setTxnTimeoutMs(long txnTimeoutMs) {
+        if (txnTimeoutMs < 1) {
+            throw new IllegalArgumentException("Transaction timeout must be positive.");
+        }
+        this.txnTimeoutMs = txnTimeoutMs;
+        return this;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("heartbeatIntervalMs", heartbeatIntervalMs)
+                .put("heartbeatJitterMs", heartbeatJitterMs)
+                .put("checkTtlMs", checkTtlMs)
+                .put("deregisterCriticalAfter", deregisterCriticalAfter)
+                .put("membershipCoalescingWindowMs", membershipCoalescingWindowMs)
+                .put("eventBusHost", eventBusHost)
+                .put("eventBusPort", eventBusPort)
+                .put("haGroup", haGroup)
+                .put("syncMapSnapshotPath", syncMapSnapshotPath)
+                .put("syncMapSnapshotIntervalMs", syncMapSnapshotIntervalMs)
+                .put("syncMapBuckets", syncMapBuckets)
+                .put("valueCompressionThreshold", valueCompressionThreshold)
+                .put("syncMapBootstrapConsistency", syncMapBootstrapConsistency.name())
+                .put("syncMapWatchConsistency", syncMapWatchConsistency.name())
+                .put("multiMapBootstrapConsistency", multiMapBootstrapConsistency.name())
+                .put("multiMapWatchConsistency", multiMapWatchConsistency.name())
+                .put("maxStalenessMs", maxStalenessMs)
+                .put("subscriptionCoalescingWindowMs", subscriptionCoalescingWindowMs)
+                .put("txnTimeoutMs", txnTimeoutMs);
+    }
+}
@@ -0,0 +1,35 @@
+package io.vertx.spi.cluster.consul;
+
+/**
+ * Consistency mode of Consul reads (see Consul docs on consistency modes).
+ */
+public enum ReadConsistency {
+
+    /**
+     * Reads are served by the leader, which might be stale for a very short window during a leader election.
+     */
+    DEFAULT(null),
+    /**
+     * Reads are served by any server (followers included), i.e. they scale with the number of servers but might be
+     * arbitrarily stale -> bounded by {@link ConsulClusterManagerOptions#setMaxStalenessMs(long)}.
+     */
+    STALE("stale"),
+    /**
+     * Reads are served by the leader once it has confirmed its leadership with a quorum of servers, i.e. never stale
+     * but the most expensive ones.
+     */
+    CONSISTENT("consistent");
+
+    private final String queryParameter;
+
+    ReadConsistency(String queryParameter) {
+        this.queryParameter = queryParameter;
+    }
+
+    /**
+     * @return query parameter that selects the mode, null for the default mode.
+     */
+    public String queryParameter() {
+        return queryParameter;
+    }
+}
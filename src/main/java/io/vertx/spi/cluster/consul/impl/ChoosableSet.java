@@ -0,0 +1,91 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.spi.cluster.ChoosableIterable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Immutable, array-backed set of values of a multimap key. A new set is published only when the values of the key change
+ * (never per message), so the readers never see a half-updated set.
+ * <p>
+ * {@link #choose()} is the hot path of every point-to-point event bus send: it picks the values in round robin fashion by
+ * a lock-free atomic cursor and doesn't allocate. A set that replaces the previous one of the same key takes its cursor
+ * over, i.e. the round robin carries on rather than starting over from the first value.
+ */
+public final class ChoosableSet<T> implements ChoosableIterable<T> {
+
+    private static final ChoosableSet<?> EMPTY = new ChoosableSet<>(new Object[0], 0);
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<ChoosableSet> CURSOR = AtomicIntegerFieldUpdater.newUpdater(ChoosableSet.class, "cursor");
+
+    private final Object[] values;
+    private volatile int cursor;
+
+    private ChoosableSet(Object[] values, int cursor) {
+        this.values = values;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @param values   values of the key, the array is owned by the set from now on.
+     * @param previous set the new one replaces (if any), its cursor is taken over.
+     */
+    public static <T> ChoosableSet<T> of(Object[] values, ChoosableSet<T> previous) {
+        if (values.length == 0) {
+            return empty();
+        }
+        return new ChoosableSet<>(values, previous == null ? 0 : previous.cursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ChoosableSet<T> empty() {
+        return (ChoosableSet<T>) EMPTY;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T choose() {
+        if (values.length == 0) {
+            return null;
+        }
+        if (values.length == 1) {
+            return (T) values[0];
+        }
+        // cursor overflows eventually -> sign bit is masked out.
+        return (T) values[(CURSOR.getAndIncrement(this) & Integer.MAX_VALUE) % values.length];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (next >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return (T) values[next++];
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,151 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster manager wide dispatcher of watch callbacks. Watches are always executed within the event loop context whereas
+ * their consumers (i.e. node listener) must never be called within it -> this is where the work gets handed off to.
+ * <p>
+ * Every consumer gets its own {@link Lane}: tasks of a single lane are executed one by one in submission order, tasks of
+ * different lanes run in parallel on a fixed number of threads.
+ * <p>
+ * Overflow policy: each lane holds at most {@code laneCapacity} pending tasks. Once a lane is full, newly submitted
+ * tasks are rejected (logged and counted in {@link #rejectedCount()}), already queued tasks are never dropped. Consumers
+ * are expected to submit the full state they have received from Consul (and compute deltas against what they applied
+ * last) so that the next accepted task brings them back in sync.
+ */
+public final class ClusterEventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterEventDispatcher.class);
+    // max number of tasks a lane runs in a row before giving its thread back to other lanes.
+    private static final int MAX_TASKS_PER_RUN = 32;
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+    public static final int DEFAULT_LANE_CAPACITY = 1024;
+
+    private final ExecutorService executor;
+    private final int laneCapacity;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ClusterEventDispatcher() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_LANE_CAPACITY);
+    }
+
+    public ClusterEventDispatcher(int poolSize, int laneCapacity) {
+        if (poolSize < 1 || laneCapacity < 1) {
+            throw new IllegalArgumentException("Pool size and lane capacity must be positive.");
+        }
+        this.laneCapacity = laneCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "vertx-consul-dispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates new ordered lane.
+     *
+     * @param name used for logging purposes only.
+     */
+    public Lane lane(String name) {
+        return new Lane(name);
+    }
+
+    /**
+     * @return number of tasks that have been rejected since lanes were full.
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops the dispatcher. Pending tasks are discarded.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sequence of tasks that are executed one after another in submission order.
+     */
+    public final class Lane {
+        private final String name;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Submits the task to this lane.
+         *
+         * @return false if the task has been rejected since the lane is full or the dispatcher is closed.
+         */
+        public boolean dispatch(Runnable task) {
+            synchronized (tasks) {
+                if (tasks.size() >= laneCapacity) {
+                    rejected.incrementAndGet();
+                    log.warn("Lane: '{}' is full ('{}' pending tasks) -> task has been rejected.", name, tasks.size());
+                    return false;
+                }
+                tasks.add(task);
+                if (!scheduled) {
+                    if (!schedule()) {
+                        tasks.clear();
+                        return false;
+                    }
+                    scheduled = true;
+                }
+            }
+            return true;
+        }
+
+        private boolean schedule() {
+            try {
+                executor.execute(this::run);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.warn("Dispatcher is closed -> task of lane: '{}' has been rejected.", name);
+                return false;
+            }
+        }
+
+        private void run() {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task;
+                synchronized (tasks) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Task of lane: '{}' has failed. Details: '{}'", name, e.getMessage());
+                }
+            }
+            synchronized (tasks) {
+                if (tasks.isEmpty()) {
+                    scheduled = false;
+                } else if (!schedule()) {
+                    tasks.clear();
+                    scheduled = false;
+                }
+            }
+        }
+    }
+}
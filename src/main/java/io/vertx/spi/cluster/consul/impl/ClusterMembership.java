@@ -0,0 +1,118 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Membership diff engine. Keeps the previously seen view of the cluster and, given the next view received from Consul,
+ * computes only the nodes that have actually joined or left the cluster.
+ * <p>
+ * The view itself is an immutable {@link MembershipSnapshot} that gets swapped atomically, i.e. {@link #snapshot()} never
+ * blocks and never allocates. Updates are serialized.
+ * <p>
+ * Ordering (limited): the snapshot version is the Consul index (the raft index the view has been read at). Views come
+ * from a single blocking query loop and are applied on a single ordered lane, i.e. a node never goes back to an older
+ * view, and the events of a single delta are emitted in a fixed order (leaves first, then joins, each sorted by node id).
+ * Two nodes that expose the snapshot of the same version expose the same list of nodes.
+ * <p>
+ * That is as far as it goes: there is no cluster wide log of membership changes. A blocking query returns the latest
+ * view only, i.e. it skips every index in between, and each node's query loop wakes up at its own pace. Hence nodes
+ * may merge different sets of changes into a delta and observe a different interleaving of joins and leaves (i.e. one
+ * node sees "B left, C joined" as two deltas, another one as a single delta, a third one never sees a node that joined
+ * and left in between). The Vert.x requirement that every node gets the exact same sequence of events is NOT met.
+ */
+public final class ClusterMembership {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private volatile MembershipSnapshot snapshot = MembershipSnapshot.EMPTY;
+
+    /**
+     * Replaces the current view of the cluster with the given one.
+     *
+     * @param index       consul index the view has been read at.
+     * @param nextMembers nodes (by their ids) that are currently registered in Consul.
+     * @return the joins and leaves between the previous and the next view, along with the new view itself.
+     */
+    public synchronized Delta update(long index, Map<String, NodeInfo> nextMembers) {
+        Objects.requireNonNull(nextMembers);
+        MembershipSnapshot prev = snapshot;
+        if (index < prev.version()) {
+            // the only way to get here is consul index reset (i.e. snapshot restore) -> sequence gets re-based.
+            log.warn("Consul index went backwards from: '{}' to: '{}'. Membership sequence is re-based.", prev.version(), index);
+        }
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        for (String node : nextMembers.keySet()) {
+            if (!prev.contains(node)) {
+                joined.add(node);
+            }
+        }
+        for (String node : prev.nodes()) {
+            if (!nextMembers.containsKey(node)) {
+                left.add(node);
+            }
+        }
+        if (joined.isEmpty() && left.isEmpty()) {
+            return new Delta(prev, joined, left);
+        }
+        Collections.sort(joined);
+        Collections.sort(left);
+        MembershipSnapshot next = new MembershipSnapshot(index, nextMembers);
+        snapshot = next;
+        return new Delta(next, joined, left);
+    }
+
+    /**
+     * @return current view of the cluster.
+     */
+    public MembershipSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Joins and leaves between two consecutive views of the cluster, in the order they must be delivered: leaves first,
+     * then joins.
+     */
+    public static final class Delta {
+        private final MembershipSnapshot snapshot;
+        private final List<String> joined;
+        private final List<String> left;
+
+        Delta(MembershipSnapshot snapshot, List<String> joined, List<String> left) {
+            this.snapshot = snapshot;
+            this.joined = Collections.unmodifiableList(joined);
+            this.left = Collections.unmodifiableList(left);
+        }
+
+        /**
+         * @return the view of the cluster right after this delta has been applied.
+         */
+        public MembershipSnapshot snapshot() {
+            return snapshot;
+        }
+
+        public List<String> joined() {
+            return joined;
+        }
+
+        public List<String> left() {
+            return left;
+        }
+
+        public boolean isEmpty() {
+            return joined.isEmpty() && left.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "joined: " + joined + ", left: " + left + " -> " + snapshot;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.shareddata.impl.ClusterSerializable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * (De)serialization of the keys and values of the async cluster maps. Supported types: {@link String},
+ * {@link ClusterSerializable} (i.e. {@code ClusterNodeInfo} the event bus subscriptions are made of) and
+ * {@link Serializable}. The encoded form starts with a type byte.
+ * <p>
+ * Encoding is deterministic -> {@link #digest(byte[])} of an encoded value identifies the value.
+ */
+public final class ClusterSerialization {
+
+    private static final byte STRING = 0;
+    private static final byte CLUSTER_SERIALIZABLE = 1;
+    private static final byte SERIALIZABLE = 2;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ClusterSerialization() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the object is of unsupported type or it can't be serialized.
+     */
+    public static byte[] encode(Object object) {
+        if (object instanceof String) {
+            byte[] bytes = ((String) object).getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = new byte[bytes.length + 1];
+            encoded[0] = STRING;
+            System.arraycopy(bytes, 0, encoded, 1, bytes.length);
+            return encoded;
+        }
+        if (object instanceof ClusterSerializable) {
+            byte[] className = object.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            Buffer buffer = Buffer.buffer()
+                    .appendByte(CLUSTER_SERIALIZABLE)
+                    .appendInt(className.length)
+                    .appendBytes(className);
+            ((ClusterSerializable) object).writeToBuffer(buffer);
+            return buffer.getBytes();
+        }
+        if (object instanceof Serializable) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(SERIALIZABLE);
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+                objectOut.writeObject(object);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can't serialize: " + object, e);
+            }
+            return out.toByteArray();
+        }
+        throw new IllegalArgumentException("Unsupported type: " + (object == null ? null : object.getClass().getName()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes can't be deserialized.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Nothing to deserialize.");
+        }
+        try {
+            switch (bytes[0]) {
+                case STRING:
+                    return (T) new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+                case CLUSTER_SERIALIZABLE: {
+                    Buffer buffer = Buffer.buffer(bytes);
+                    int classNameLength = buffer.getInt(1);
+                    String className = buffer.getString(5, 5 + classNameLength, StandardCharsets.UTF_8.name());
+                    Class<?> type = Class.forName(className, true, Thread.currentThread().getContextClassLoader() != null
+                            ? Thread.currentThread().getContextClassLoader() : ClusterSerialization.class.getClassLoader());
+                    ClusterSerializable object = (ClusterSerializable) type.newInstance();
+                    object.readFromBuffer(5 + classNameLength, buffer);
+                    return (T) object;
+                }
+                case SERIALIZABLE:
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+                        return (T) in.readObject();
+                    }
+                default:
+                    throw new IllegalArgumentException("Unknown type: " + bytes[0]);
+            }
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Can't deserialize. Details: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return hex encoded SHA-1 of the given bytes, safe to be used as a segment of consul KV store key.
+     */
+    public static String digest(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
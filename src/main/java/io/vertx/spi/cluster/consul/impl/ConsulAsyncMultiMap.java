@@ -1,36 +1,907 @@
 package io.vertx.spi.cluster.consul.impl;
 
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.spi.cluster.AsyncMultiMap;
 import io.vertx.core.spi.cluster.ChoosableIterable;
+import io.vertx.ext.consul.ConsulClientOptions;
+import io.vertx.spi.cluster.consul.ConsulClusterManagerOptions;
+import io.vertx.spi.cluster.consul.ReadConsistency;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
-public class ConsulAsyncMultiMap<K, V> implements AsyncMultiMap<K, V> {
+/**
+ * Async multimap (i.e. event bus subscriptions) based on consul KV store, along with an in-memory near-cache.
+ * <p>
+ * Layout: every (key, value) pair is a KV entry {@code __vertx.multiMaps/<map name>/<encoded key>/<value digest>} that
+ * holds the serialized value (see {@link ClusterSerialization}), encoded by the {@link ValueCodec} shared with the sync
+ * maps (i.e. deflated once it reaches the compression threshold). The digest is taken from the serialized value, so it
+ * doesn't depend on the threshold. The whole prefix of the map is watched by a single
+ * blocking query and every state is streamed into the near-cache, so {@link #get(Object, Handler)} never leaves the
+ * memory (and completes synchronously once the map has been initialized).
+ * <p>
+ * Consistency:
+ * <ul>
+ * <li>the near-cache holds an immutable {@link ChoosableSet} per key, a new set is published every time the values of
+ * the key change -> readers always see a consistent set of a key.</li>
+ * <li>local writes are visible to local reads as soon as they have been committed (i.e. before the watch brings them
+ * back): they are overlaid on top of the state received from Consul until the watch catches up.</li>
+ * </ul>
+ * Additions made within a short window (see {@link ConsulClusterManagerOptions#setSubscriptionCoalescingWindowMs(long)})
+ * are coalesced into as few transactions as possible, i.e. registering thousands of consumers at startup costs a handful
+ * of round trips.
+ * <p>
+ * Entries added by the node are held by its {@link ConsulSession} (once it exists), i.e. Consul deletes them on its own
+ * once the node fails or leaves.
+ * <p>
+ * Ordering of local writes: every addition / removal gets a sequence number as soon as it is issued (additions when they
+ * enter the coalescing window). A key's writes reach the txn batcher in that order, and every write is applied to the
+ * near-cache on its own once it is done, unless a later write of the same key has been applied already -> a removal is
+ * never undone by an earlier addition that happens to complete after it.
+ * <p>
+ * All the near-cache bookkeeping runs on a dispatcher lane of its own, i.e. never within the event loop.
+ */
+public final class ConsulAsyncMultiMap<K, V> implements AsyncMultiMap<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsulAsyncMultiMap.class);
+    public static final String ROOT_PREFIX = "__vertx.multiMaps";
+    // max number of transactions a bulk removal keeps in flight.
+    private static final int MAX_CONCURRENT_TXNS = 4;
+
+    private final String name;
+    // "<root prefix>/<map name>/"
+    private final String prefix;
+    private final Vertx vertx;
+    // sends a transaction, i.e. ConsulTxn#execute.
+    private final Function<JsonArray, Single<JsonArray>> txn;
+    private final TxnBatcher txnBatcher;
+    private final ConsulSession session;
+    private final ValueCodec valueCodec;
+    private final ClusterEventDispatcher.Lane lane;
+    private final KvPrefixWatch watch;
+    private final ReadConsistency bootstrapConsistency;
+    // 0 -> every addition is submitted on its own.
+    private final long addCoalescingWindowMs;
+
+    // near-cache: encoded key -> values of the key.
+    private final Map<String, ChoosableSet<V>> view = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+    // initialization is shared by all the callers of init().
+    private Completable initialization;
+    // additions waiting for the coalescing window to expire, guarded by this.
+    private List<PendingAdd<V>> pendingAdds = new ArrayList<>();
+    private long addTimerId = -1;
+    private boolean closed;
+    // sequence of the local writes, see KeyFence.
+    private final AtomicLong writeSequence = new AtomicLong();
+    // key -> local writes of the key that are in flight, the entry is gone once all of them are done.
+    private final Map<String, KeyFence> fences = new ConcurrentHashMap<>();
+
+    // the rest is only touched on the lane. Keys are relative to the map prefix: <encoded key>/<value digest>.
+    // state received from Consul.
+    private final Map<String, StoredEntry<V>> stored = new HashMap<>();
+    // entries added by this node (and not removed since), re-acquired if its session gets re-created.
+    private final Map<String, V> owned = new HashMap<>();
+    // local writes the state received from Consul doesn't reflect yet.
+    private final Map<String, LocalWrite<V>> localWrites = new HashMap<>();
+    // stored entries overlaid by the local writes, grouped by encoded key.
+    private final Map<String, Map<String, V>> effective = new HashMap<>();
+    // reverse index of the effective entries: value digest -> keys.
+    private final Map<String, Set<String>> byDigest = new HashMap<>();
+    // encoded keys whose values have changed since the view has been published for the last time.
+    private final Set<String> dirty = new HashSet<>();
+    private long generation;
+
+    public ConsulAsyncMultiMap(String name, Vertx vertx, ConsulClientOptions consulClientOptions, ConsulClusterManagerOptions options,
+                               ClusterEventDispatcher dispatcher, ConsulTxn txn, TxnBatcher txnBatcher, ConsulSession session,
+                               ValueCodec valueCodec, ConsulClusterMetrics metrics) {
+        this(name, vertx, consulClientOptions, options, dispatcher, Objects.requireNonNull(txn)::execute, txnBatcher, session,
+                valueCodec, metrics);
+    }
+
+    ConsulAsyncMultiMap(String name, Vertx vertx, ConsulClientOptions consulClientOptions, ConsulClusterManagerOptions options,
+                        ClusterEventDispatcher dispatcher, Function<JsonArray, Single<JsonArray>> txn, TxnBatcher txnBatcher,
+                        ConsulSession session, ValueCodec valueCodec, ConsulClusterMetrics metrics) {
+        Objects.requireNonNull(name);
+        if (name.isEmpty() || name.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("Multimap name must be non empty and must not contain '/': " + name);
+        }
+        this.name = name;
+        this.prefix = ROOT_PREFIX + "/" + name + "/";
+        this.vertx = Objects.requireNonNull(vertx);
+        this.txn = Objects.requireNonNull(txn);
+        this.txnBatcher = Objects.requireNonNull(txnBatcher);
+        this.session = Objects.requireNonNull(session);
+        session.onRecreated(this::reacquire);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.lane = Objects.requireNonNull(dispatcher).lane(prefix);
+        this.bootstrapConsistency = options.getMultiMapBootstrapConsistency();
+        this.addCoalescingWindowMs = options.getSubscriptionCoalescingWindowMs();
+        this.watch = new KvPrefixWatch(vertx, consulClientOptions, prefix, options.getMultiMapWatchConsistency(),
+                options.getMaxStalenessMs(), metrics);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Asynchronously warms up the near-cache and registers the watch that keeps it in sync with Consul KV store.
+     * Subsequent calls share the very same initialization.
+     */
+    public synchronized Completable init() {
+        if (Objects.isNull(initialization)) {
+            log.trace("Initializing multimap: '{}'.", name);
+            initialization = watch
+                    .fetch(bootstrapConsistency)
+                    .flatMap(result -> onLane(() -> {
+                        applyChanges(result.body(), result.index());
+                        return result.index();
+                    }))
+                    .doOnSuccess(index -> {
+                        registerWatcher(index);
+                        initialized = true;
+                    })
+                    .toCompletable()
+                    .cache();
+        }
+        return initialization;
+    }
+
+    /**
+     * Warms up the near-cache from the given state rather than from Consul and doesn't register the watch, i.e. the
+     * near-cache is only updated by local writes and by the states handed over to {@link #applyState(Buffer, long)}.
+     */
+    synchronized Completable init(Buffer state, long index) {
+        if (Objects.isNull(initialization)) {
+            initialization = applyState(state, index)
+                    .doOnComplete(() -> initialized = true)
+                    .cache();
+        }
+        return initialization;
+    }
+
+    /**
+     * Applies the given state of the map prefix on the lane, the way the watch does.
+     */
+    Completable applyState(Buffer state, long index) {
+        return onLane(() -> {
+            applyChanges(state, index);
+            return index;
+        }).toCompletable();
+    }
+
+    /**
+     * Stops the watch. The map can't be used after it has been closed.
+     */
+    public void close() {
+        log.trace("Closing multimap: '{}'.", name);
+        List<PendingAdd<V>> discarded;
+        synchronized (this) {
+            closed = true;
+            discarded = takePendingAdds();
+        }
+        discarded.forEach(pendingAdd -> {
+            endWrite(pendingAdd.key, false, pendingAdd.seq);
+            pendingAdd.complete(Future.failedFuture(new IllegalStateException("Multimap: '" + name + "' is closed.")));
+        });
+        watch.stop();
+    }
 
     @Override
     public void add(K k, V v, Handler<AsyncResult<Void>> completionHandler) {
+        Context context = vertx.getOrCreateContext();
+        String key;
+        byte[] value;
+        try {
+            byte[] serialized = ClusterSerialization.encode(v);
+            key = encodeKey(k) + "/" + ClusterSerialization.digest(serialized);
+            value = valueCodec.encodeBytes(serialized);
+        } catch (IllegalArgumentException e) {
+            context.runOnContext(event -> completionHandler.handle(Future.failedFuture(e)));
+            return;
+        }
+        log.trace("Adding: '{}' -> '{}' to multimap: '{}'.", k, v, name);
+        List<PendingAdd<V>> batch = null;
+        synchronized (this) {
+            if (closed) {
+                context.runOnContext(event -> completionHandler.handle(Future.failedFuture(
+                        new IllegalStateException("Multimap: '" + name + "' is closed."))));
+                return;
+            }
+            pendingAdds.add(new PendingAdd<>(key, value, v, beginWrite(key), context, completionHandler));
+            if (addCoalescingWindowMs == 0 || pendingAdds.size() >= ConsulTxn.MAX_OPS) {
+                batch = takePendingAdds();
+            } else if (addTimerId == -1) {
+                addTimerId = vertx.setTimer(addCoalescingWindowMs, id -> {
+                    synchronized (this) {
+                        addTimerId = -1;
+                    }
+                    flushAdds();
+                });
+            }
+        }
+        if (Objects.nonNull(batch)) {
+            submitAdds(batch);
+        }
+    }
+
+    /**
+     * Submits the pending additions right away.
+     */
+    private void flushAdds() {
+        List<PendingAdd<V>> batch;
+        synchronized (this) {
+            batch = takePendingAdds();
+        }
+        if (!batch.isEmpty()) {
+            submitAdds(batch);
+        }
+    }
 
+    private synchronized List<PendingAdd<V>> takePendingAdds() {
+        if (addTimerId != -1) {
+            vertx.cancelTimer(addTimerId);
+            addTimerId = -1;
+        }
+        List<PendingAdd<V>> batch = pendingAdds;
+        pendingAdds = new ArrayList<>();
+        return batch;
+    }
+
+    /**
+     * Submits a batch of coalesced additions: a single operation per entry (i.e. repeated additions of the same pair are
+     * merged), all of them at once -> they end up in as few transactions as possible. Every entry is applied to the
+     * near-cache (and its callers get completed) as soon as its own operation is done, not once the whole batch is: the
+     * batch may span several transactions and a removal of the entry may complete in between.
+     */
+    private void submitAdds(List<PendingAdd<V>> batch) {
+        log.trace("Submitting '{}' coalesced additions to multimap: '{}'.", batch.size(), name);
+        Map<String, List<PendingAdd<V>>> byKey = new LinkedHashMap<>();
+        batch.forEach(pendingAdd -> byKey.computeIfAbsent(pendingAdd.key, key -> new ArrayList<>(1)).add(pendingAdd));
+        byKey.forEach((key, adds) -> {
+            PendingAdd<V> last = adds.get(adds.size() - 1);
+            long[] seqs = new long[adds.size()];
+            for (int i = 0; i < seqs.length; i++) {
+                seqs[i] = adds.get(i).seq;
+            }
+            completeWrite(key, seqs, acquire(key, last.bytes, last.seq), (result, latest) -> {
+                if (latest) {
+                    Long modifyIndex = result.getLong("ModifyIndex");
+                    owned.put(key, last.value);
+                    localWrites.put(key, LocalWrite.added(last.value, Objects.isNull(modifyIndex) ? 0 : modifyIndex));
+                    refresh(key);
+                }
+                return true;
+            }).subscribe(
+                    done -> adds.forEach(pendingAdd -> pendingAdd.complete(Future.succeededFuture())),
+                    throwable -> adds.forEach(pendingAdd -> pendingAdd.complete(Future.failedFuture(throwable))));
+        });
+        // no need to wait for the batcher's flush delay, the batch has already been coalesced.
+        txnBatcher.flush();
+    }
+
+    /**
+     * Applies a local write of the given key to the near-cache once the write has been committed: {@code apply} runs on
+     * the lane with the write's result and whether the write is the latest one of the key (i.e. whether it is to be
+     * applied at all). The view gets published right after.
+     *
+     * @param seqs sequence numbers of the writes the operation stands for.
+     */
+    private <T> Single<T> completeWrite(String key, long[] seqs, Single<JsonObject> write, BiFunction<JsonObject, Boolean, T> apply) {
+        AtomicBoolean ended = new AtomicBoolean();
+        return write
+                .flatMap(result -> onLane(() -> {
+                    ended.set(true);
+                    T outcome = apply.apply(result, endWrite(key, true, seqs));
+                    publish();
+                    return outcome;
+                }))
+                .doOnError(throwable -> {
+                    // either the write has failed or the lane has rejected it.
+                    if (ended.compareAndSet(false, true)) {
+                        endWrite(key, false, seqs);
+                    }
+                });
+    }
+
+    /**
+     * Registers a local write of the given key.
+     *
+     * @return sequence number of the write.
+     */
+    private long beginWrite(String key) {
+        long[] seq = new long[1];
+        fences.compute(key, (k, fence) -> {
+            KeyFence current = Objects.isNull(fence) ? new KeyFence() : fence;
+            current.inFlight++;
+            current.lastSubmitted = seq[0] = writeSequence.incrementAndGet();
+            return current;
+        });
+        return seq[0];
+    }
+
+    /**
+     * Registers a local write of the given key unless another one is in flight.
+     *
+     * @return sequence number of the write, 0 if there is another one in flight.
+     */
+    private long beginWriteIfIdle(String key) {
+        long[] seq = new long[1];
+        fences.computeIfAbsent(key, k -> {
+            KeyFence fence = new KeyFence();
+            fence.inFlight = 1;
+            fence.lastSubmitted = seq[0] = writeSequence.incrementAndGet();
+            return fence;
+        });
+        return seq[0];
+    }
+
+    /**
+     * Marks the given writes of the key done.
+     *
+     * @return true if they have succeeded and no later write of the key has been applied yet, i.e. they are to be applied.
+     */
+    private boolean endWrite(String key, boolean succeeded, long... seqs) {
+        boolean[] latest = new boolean[1];
+        fences.computeIfPresent(key, (k, fence) -> {
+            for (long seq : seqs) {
+                if (succeeded && seq > fence.lastApplied) {
+                    fence.lastApplied = seq;
+                    latest[0] = true;
+                }
+                fence.inFlight--;
+            }
+            return fence.inFlight <= 0 ? null : fence;
+        });
+        return latest[0];
+    }
+
+    /**
+     * @return true if a later write of the key has been issued after the given one.
+     */
+    private boolean superseded(String key, long seq) {
+        KeyFence fence = fences.get(key);
+        return Objects.nonNull(fence) && fence.lastSubmitted > seq;
+    }
+
+    /**
+     * Writes the entry by the node's session. A lock rolled back by a session that has been invalidated in the meantime
+     * gets retried once the session has been verified (i.e. re-created if need be), unless a later write of the entry
+     * (i.e. its removal) has been issued in the meantime: the retry would be sent after it.
+     */
+    private Single<JsonObject> acquire(String key, byte[] value, long seq) {
+        String sessionId = session.id();
+        if (Objects.isNull(sessionId)) {
+            // session doesn't exist (yet, or it is being re-created) -> plain set, re-acquired once the session exists.
+            return txnBatcher.submit(ConsulTxn.set(prefix + key, value));
+        }
+        return txnBatcher
+                .submit(ConsulTxn.lock(prefix + key, value, sessionId))
+                .onErrorResumeNext(throwable -> throwable instanceof ConsulTxn.RolledBackException
+                        ? session.verify().andThen(Single.defer(() -> {
+                            if (superseded(key, seq)) {
+                                log.trace("Entry: '{}' of multimap: '{}' has been written again, its lock isn't retried.", key, name);
+                                return Single.error(throwable);
+                            }
+                            String currentId = session.id();
+                            return txnBatcher.submit(Objects.isNull(currentId)
+                                    ? ConsulTxn.set(prefix + key, value)
+                                    : ConsulTxn.lock(prefix + key, value, currentId));
+                        }))
+                        : Single.error(throwable));
+    }
+
+    /**
+     * Acquires all the entries of this node again once its session has been re-created (Consul has deleted them along
+     * with the previous session). They go through the coalescer like any other addition. Entries are picked on the lane,
+     * skipping the ones with a write in flight (i.e. being removed): that write decides on its own.
+     */
+    private void reacquire() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        onLane(() -> {
+            int count = 0;
+            synchronized (this) {
+                if (closed) {
+                    return 0;
+                }
+                for (Map.Entry<String, V> entry : owned.entrySet()) {
+                    long seq = beginWriteIfIdle(entry.getKey());
+                    if (seq > 0) {
+                        byte[] bytes = valueCodec.encodeBytes(ClusterSerialization.encode(entry.getValue()));
+                        pendingAdds.add(new PendingAdd<>(entry.getKey(), bytes, entry.getValue(), seq, null, null));
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }).subscribe(
+                count -> {
+                    if (count > 0) {
+                        log.warn("Re-acquiring '{}' entries of multimap: '{}' by the new session.", count, name);
+                        flushAdds();
+                    }
+                },
+                throwable -> log.error("Entries of multimap: '{}' couldn't be re-acquired. Details: '{}'", name, throwable.getMessage()));
     }
 
     @Override
     public void get(K k, Handler<AsyncResult<ChoosableIterable<V>>> asyncResultHandler) {
-
+        String key;
+        try {
+            key = encodeKey(k);
+        } catch (IllegalArgumentException e) {
+            vertx.getOrCreateContext().runOnContext(event -> asyncResultHandler.handle(Future.failedFuture(e)));
+            return;
+        }
+        if (initialized) {
+            // hot path -> straight from memory.
+            asyncResultHandler.handle(Future.succeededFuture(view.getOrDefault(key, ChoosableSet.empty())));
+            return;
+        }
+        Context context = vertx.getOrCreateContext();
+        complete(context, asyncResultHandler, init().<ChoosableIterable<V>>toSingle(() -> view.getOrDefault(key, ChoosableSet.empty())));
     }
 
     @Override
     public void remove(K k, V v, Handler<AsyncResult<Boolean>> completionHandler) {
-
+        Context context = vertx.getOrCreateContext();
+        String key;
+        try {
+            key = encodeKey(k) + "/" + ClusterSerialization.digest(ClusterSerialization.encode(v));
+        } catch (IllegalArgumentException e) {
+            context.runOnContext(event -> completionHandler.handle(Future.failedFuture(e)));
+            return;
+        }
+        log.trace("Removing: '{}' -> '{}' from multimap: '{}'.", k, v, name);
+        List<PendingAdd<V>> batch;
+        long seq;
+        synchronized (this) {
+            // pending additions go first -> a removal never gets overtaken by an earlier addition of the same entry.
+            batch = takePendingAdds();
+            seq = beginWrite(key);
+        }
+        if (!batch.isEmpty()) {
+            submitAdds(batch);
+        }
+        complete(context, completionHandler, completeWrite(key, new long[]{seq}, txnBatcher.submit(ConsulTxn.delete(prefix + key)),
+                (result, latest) -> {
+                    boolean existed = Objects.nonNull(effectiveValue(key));
+                    if (latest) {
+                        owned.remove(key);
+                        localWrites.put(key, LocalWrite.removed());
+                        refresh(key);
+                    }
+                    return existed;
+                }));
     }
 
     @Override
     public void removeAllForValue(V v, Handler<AsyncResult<Void>> completionHandler) {
-
+        Context context = vertx.getOrCreateContext();
+        String digest;
+        try {
+            digest = ClusterSerialization.digest(ClusterSerialization.encode(v));
+        } catch (IllegalArgumentException e) {
+            context.runOnContext(event -> completionHandler.handle(Future.failedFuture(e)));
+            return;
+        }
+        removeAll(context, completionHandler, () -> {
+            Set<String> keys = byDigest.get(digest);
+            return Objects.isNull(keys) ? Collections.emptyList() : Collections.singletonList(keys);
+        });
     }
 
     @Override
     public void removeAllMatching(Predicate<V> p, Handler<AsyncResult<Void>> completionHandler) {
+        removeAll(vertx.getOrCreateContext(), completionHandler, () -> {
+            // equal values share the digest -> the predicate is tested once per distinct value, not once per entry.
+            List<Set<String>> matches = new ArrayList<>();
+            byDigest.values().forEach(keys -> {
+                if (p.test(effectiveValue(keys.iterator().next()))) {
+                    matches.add(keys);
+                }
+            });
+            return matches;
+        });
+    }
+
+    /**
+     * Removes all the entries (as they are known to the near-cache) the given matcher picks from the reverse index, i.e.
+     * at the cost of the matches rather than of the whole map.
+     * <p>
+     * Deletions:
+     * <ul>
+     * <li>entries of this node go through the txn batcher, i.e. they are ordered with the node's other writes.</li>
+     * <li>entries held by the session of another node (i.e. the subscriptions of a failed node) are only removed from the
+     * near-cache: Consul deletes them as soon as it invalidates the session, there's no need for every node to delete
+     * them on its own.</li>
+     * <li>the rest (entries held by no session) is deleted by transactions of {@link ConsulTxn#MAX_OPS} operations, up to
+     * {@link #MAX_CONCURRENT_TXNS} of them in flight.</li>
+     * </ul>
+     */
+    private void removeAll(Context context, Handler<AsyncResult<Void>> completionHandler, Callable<List<Set<String>>> matcher) {
+        complete(context, completionHandler, init()
+                .andThen(onLane(() -> {
+                    Removal removal = new Removal();
+                    matcher.call().forEach(keys -> keys.forEach(key -> {
+                        removal.keys.add(key);
+                        StoredEntry<V> entry = stored.get(key);
+                        // not stored yet -> added by this node.
+                        if (Objects.isNull(entry) || owned.containsKey(key)) {
+                            removal.own.add(key);
+                        } else if (Objects.isNull(entry.session)) {
+                            removal.unowned.add(key);
+                        }
+                    }));
+                    return removal;
+                }))
+                .flatMapCompletable(removal -> {
+                    log.trace("Removing '{}' entries from multimap: '{}', '{}' of them are deleted by this node.",
+                            removal.keys.size(), name, removal.own.size() + removal.unowned.size());
+                    List<PendingAdd<V>> batch;
+                    long[] seqs = new long[removal.keys.size()];
+                    synchronized (this) {
+                        batch = takePendingAdds();
+                        for (int i = 0; i < seqs.length; i++) {
+                            seqs[i] = beginWrite(removal.keys.get(i));
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        submitAdds(batch);
+                    }
+                    List<Completable> deletions = new ArrayList<>(removal.own.size() + 1);
+                    removal.own.forEach(key -> deletions.add(txnBatcher.submit(ConsulTxn.delete(prefix + key)).toCompletable()));
+                    deletions.add(deleteInChunks(removal.unowned));
+                    AtomicBoolean ended = new AtomicBoolean();
+                    return Completable.merge(deletions).andThen(onLane(() -> {
+                        ended.set(true);
+                        for (int i = 0; i < seqs.length; i++) {
+                            String key = removal.keys.get(i);
+                            // an entry added again in the meantime stays.
+                            if (endWrite(key, true, seqs[i])) {
+                                owned.remove(key);
+                                localWrites.put(key, LocalWrite.removed());
+                                refresh(key);
+                            }
+                        }
+                        publish();
+                        return true;
+                    })).toCompletable().doOnError(throwable -> {
+                        if (ended.compareAndSet(false, true)) {
+                            for (int i = 0; i < seqs.length; i++) {
+                                endWrite(removal.keys.get(i), false, seqs[i]);
+                            }
+                        }
+                    });
+                }));
+    }
+
+    private Completable deleteInChunks(List<String> keys) {
+        if (keys.isEmpty()) {
+            return Completable.complete();
+        }
+        List<JsonArray> chunks = new ArrayList<>(keys.size() / ConsulTxn.MAX_OPS + 1);
+        for (int from = 0; from < keys.size(); from += ConsulTxn.MAX_OPS) {
+            JsonArray chunk = new JsonArray();
+            keys.subList(from, Math.min(keys.size(), from + ConsulTxn.MAX_OPS)).forEach(key -> chunk.add(ConsulTxn.delete(prefix + key)));
+            chunks.add(chunk);
+        }
+        return Flowable
+                .fromIterable(chunks)
+                .flatMapCompletable(chunk -> txn.apply(chunk).toCompletable(), true, MAX_CONCURRENT_TXNS);
+    }
+
+    /**
+     * Watch registration. Watch listens to events that are coming from Consul KV store and updates the near-cache
+     * appropriately.
+     */
+    private void registerWatcher(long index) {
+        watch
+                .setHandler(promise -> {
+                    if (promise.succeeded()) {
+                        KvPrefixWatch.Result nextState = promise.result();
+                        lane.dispatch(() -> applyChanges(nextState.body(), nextState.index()));
+                    } else {
+                        log.error("Failed to register a watch of multimap: '{}'. Details: '{}'", name, promise.cause().getMessage());
+                    }
+                })
+                .start(index);
+    }
+
+    /**
+     * Streams the state of the map prefix into the near-cache. Only the entries whose modify index has changed get
+     * deserialized. Local writes the state reflects are dropped: an addition once the state's index has reached the
+     * addition's modify index, a removal once the entry is gone. Always runs on the lane.
+     */
+    private void applyChanges(Buffer state, long index) {
+        long currentGeneration = ++generation;
+        try {
+            KvListDecoder.decode(state, prefix.length(), (key, value, modifyIndex, session) -> {
+                if (key.lastIndexOf('/') <= 0) {
+                    return;
+                }
+                StoredEntry<V> entry = stored.get(key);
+                if (Objects.nonNull(entry) && entry.modifyIndex == modifyIndex) {
+                    entry.generation = currentGeneration;
+                    return;
+                }
+                V decoded;
+                try {
+                    decoded = ClusterSerialization.decode(valueCodec.decodeBytes(value));
+                } catch (IllegalArgumentException e) {
+                    log.error("Can't decode the value of: '{}' in multimap: '{}' -> ignored. Details: '{}'", key, name, e.getMessage());
+                    return;
+                }
+                stored.put(key, new StoredEntry<>(modifyIndex, currentGeneration, decoded, session));
+                refresh(key);
+            });
+        } catch (IOException e) {
+            // nothing gets removed from the near-cache, the next state is applied as usual.
+            log.error("Can't decode the state of multimap: '{}'. Details: '{}'", name, e.getMessage());
+            return;
+        }
+        List<String> changed = new ArrayList<>();
+        Iterator<Map.Entry<String, StoredEntry<V>>> storedIterator = stored.entrySet().iterator();
+        while (storedIterator.hasNext()) {
+            Map.Entry<String, StoredEntry<V>> entry = storedIterator.next();
+            if (entry.getValue().generation != currentGeneration) {
+                storedIterator.remove();
+                changed.add(entry.getKey());
+            }
+        }
+        Iterator<Map.Entry<String, LocalWrite<V>>> localIterator = localWrites.entrySet().iterator();
+        while (localIterator.hasNext()) {
+            Map.Entry<String, LocalWrite<V>> entry = localIterator.next();
+            LocalWrite<V> write = entry.getValue();
+            if (write.added ? index >= write.modifyIndex : !stored.containsKey(entry.getKey())) {
+                localIterator.remove();
+                changed.add(entry.getKey());
+            }
+        }
+        changed.forEach(this::refresh);
+        publish();
+    }
+
+    private V effectiveValue(String key) {
+        LocalWrite<V> write = localWrites.get(key);
+        if (Objects.nonNull(write)) {
+            return write.value;
+        }
+        StoredEntry<V> entry = stored.get(key);
+        return Objects.isNull(entry) ? null : entry.value;
+    }
+
+    /**
+     * Recomputes the effective value of the given key and marks its encoded key dirty if it has changed.
+     */
+    private void refresh(String key) {
+        String encodedKey = key.substring(0, key.lastIndexOf('/'));
+        V value = effectiveValue(key);
+        Map<String, V> values = effective.get(encodedKey);
+        if (Objects.isNull(value)) {
+            if (Objects.nonNull(values) && Objects.nonNull(values.remove(key))) {
+                if (values.isEmpty()) {
+                    effective.remove(encodedKey);
+                }
+                unindex(key);
+                dirty.add(encodedKey);
+            }
+            return;
+        }
+        if (Objects.isNull(values)) {
+            values = new LinkedHashMap<>();
+            effective.put(encodedKey, values);
+        }
+        V previous = values.put(key, value);
+        if (previous != value) {
+            if (Objects.isNull(previous)) {
+                byDigest.computeIfAbsent(digestOf(key), digest -> new HashSet<>()).add(key);
+            }
+            dirty.add(encodedKey);
+        }
+    }
+
+    private void unindex(String key) {
+        String digest = digestOf(key);
+        Set<String> keys = byDigest.get(digest);
+        if (Objects.nonNull(keys) && keys.remove(key) && keys.isEmpty()) {
+            byDigest.remove(digest);
+        }
+    }
+
+    private static String digestOf(String key) {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Publishes a new set of values for every key that has changed.
+     */
+    private void publish() {
+        dirty.forEach(encodedKey -> {
+            Map<String, V> values = effective.get(encodedKey);
+            if (Objects.isNull(values)) {
+                view.remove(encodedKey);
+            } else {
+                view.put(encodedKey, ChoosableSet.of(values.values().toArray(), view.get(encodedKey)));
+            }
+        });
+        dirty.clear();
+    }
+
+    private <T> Single<T> onLane(Callable<T> task) {
+        return Single.create(emitter -> {
+            boolean dispatched = lane.dispatch(() -> {
+                try {
+                    emitter.onSuccess(task.call());
+                } catch (Exception e) {
+                    emitter.onError(e);
+                }
+            });
+            if (!dispatched) {
+                emitter.onError(new IllegalStateException("Multimap: '" + name + "' is overloaded or closed."));
+            }
+        });
+    }
+
+    private static void complete(Context context, Handler<AsyncResult<Void>> handler, Completable result) {
+        result.subscribe(
+                () -> context.runOnContext(event -> handler.handle(Future.succeededFuture())),
+                throwable -> context.runOnContext(event -> handler.handle(Future.failedFuture(throwable))));
+    }
+
+    private static <T> void complete(Context context, Handler<AsyncResult<T>> handler, Single<T> result) {
+        result.subscribe(
+                value -> context.runOnContext(event -> handler.handle(Future.succeededFuture(value))),
+                throwable -> context.runOnContext(event -> handler.handle(Future.failedFuture(throwable))));
+    }
+
+    /**
+     * Encodes the key so that it can be used as a single segment of consul KV store key. Plain string keys (i.e. event
+     * bus addresses) are used as is, without any allocation.
+     */
+    private static String encodeKey(Object k) {
+        if (k instanceof String && isPlain((String) k)) {
+            return (String) k;
+        }
+        return "~" + Base64.getUrlEncoder().withoutPadding().encodeToString(ClusterSerialization.encode(k));
+    }
+
+    private static boolean isPlain(String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean plain = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '_' || c == ':' || c == '@';
+            if (!plain) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Entries picked by a bulk removal, keys are relative to the map prefix.
+     */
+    private static final class Removal {
+        private final List<String> keys = new ArrayList<>();
+        // entries of this node.
+        private final List<String> own = new ArrayList<>();
+        // entries held by no session.
+        private final List<String> unowned = new ArrayList<>();
+    }
+
+    private static final class StoredEntry<V> {
+        private final long modifyIndex;
+        private long generation;
+        private final V value;
+        // id of the session holding the entry, null if there is none.
+        private final String session;
+
+        private StoredEntry(long modifyIndex, long generation, V value, String session) {
+            this.modifyIndex = modifyIndex;
+            this.generation = generation;
+            this.value = value;
+            this.session = session;
+        }
+    }
+
+    /**
+     * Addition waiting to be submitted along with the other ones of its coalescing window.
+     */
+    private static final class PendingAdd<V> {
+        // relative to the map prefix: <encoded key>/<value digest>.
+        private final String key;
+        private final byte[] bytes;
+        private final V value;
+        // sequence number of the write, see KeyFence.
+        private final long seq;
+        private final Context context;
+        private final Handler<AsyncResult<Void>> handler;
+
+        private PendingAdd(String key, byte[] bytes, V value, long seq, Context context, Handler<AsyncResult<Void>> handler) {
+            this.key = key;
+            this.bytes = bytes;
+            this.value = value;
+            this.seq = seq;
+            this.context = context;
+            this.handler = handler;
+        }
+
+        private void complete(AsyncResult<Void> result) {
+            // re-acquisitions have no caller.
+            if (Objects.nonNull(handler)) {
+                context.runOnContext(event -> handler.handle(result));
+            }
+        }
+    }
+
+    /**
+     * Local writes of a key that are in flight. Only the writes later than the last applied one get applied to the
+     * near-cache; mutated within {@code fences.compute()} only.
+     */
+    private static final class KeyFence {
+        private int inFlight;
+        private volatile long lastSubmitted;
+        private long lastApplied;
+    }
+
+    /**
+     * Committed local write, value is null for removals.
+     */
+    private static final class LocalWrite<V> {
+        private final boolean added;
+        private final V value;
+        // modify index of the addition.
+        private final long modifyIndex;
+
+        private LocalWrite(boolean added, V value, long modifyIndex) {
+            this.added = added;
+            this.value = value;
+            this.modifyIndex = modifyIndex;
+        }
+
+        private static <V> LocalWrite<V> added(V value, long modifyIndex) {
+            return new LocalWrite<>(true, value, modifyIndex);
+        }
 
+        private static <V> LocalWrite<V> removed() {
+            return new LocalWrite<>(false, null, 0);
+        }
     }
 }
@@ -0,0 +1,171 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.spi.cluster.consul.ReadConsistency;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Runtime metrics of the cluster manager. All the counters are updated lock-free and can be read at any time.
+ */
+public final class ConsulClusterMetrics {
+
+    private final AtomicLong heartbeatsSent = new AtomicLong();
+    private final AtomicLong heartbeatsFailed = new AtomicLong();
+    private final AtomicLong nodesLeft = new AtomicLong();
+    private final AtomicLong lastFailureDetectionBoundMs = new AtomicLong();
+    private final AtomicLong maxFailureDetectionBoundMs = new AtomicLong();
+    private final AtomicLong totalFailureDetectionBoundMs = new AtomicLong();
+    private final AtomicLong staleReads = new AtomicLong();
+    private final AtomicLong staleReadsRejected = new AtomicLong();
+    private volatile ReadConsistency syncMapBootstrapConsistency = ReadConsistency.DEFAULT;
+    private volatile ReadConsistency syncMapWatchConsistency = ReadConsistency.DEFAULT;
+    private volatile ReadConsistency multiMapBootstrapConsistency = ReadConsistency.DEFAULT;
+    private volatile ReadConsistency multiMapWatchConsistency = ReadConsistency.DEFAULT;
+    private volatile long maxStalenessMs;
+    private volatile LongSupplier txnOpsFailed = () -> 0;
+
+    public void heartbeatSent() {
+        heartbeatsSent.incrementAndGet();
+    }
+
+    public void heartbeatFailed() {
+        heartbeatsFailed.incrementAndGet();
+    }
+
+    /**
+     * Records a node gone from the membership, along with the upper bound of the time it has taken to detect it: the time
+     * between the previous membership view (which has listed the node) and the one it's gone from, plus the check TTL.
+     * <p>
+     * Membership views only list the nodes whose check is passing and carry no per-node timestamps, so the actual
+     * failure time is unknown: the node has been alive a check TTL before the previous view at the latest, i.e. it hasn't
+     * taken longer than the bound to detect the failure. A node that has left gracefully is recorded the same way.
+     */
+    public void nodeLeft(long failureDetectionBoundMs) {
+        nodesLeft.incrementAndGet();
+        lastFailureDetectionBoundMs.set(failureDetectionBoundMs);
+        totalFailureDetectionBoundMs.addAndGet(failureDetectionBoundMs);
+        maxFailureDetectionBoundMs.accumulateAndGet(failureDetectionBoundMs, Math::max);
+    }
+
+    /**
+     * Records the consistency modes the sync maps are read with.
+     */
+    public void readConsistency(ReadConsistency bootstrap, ReadConsistency watch, long maxStalenessMs) {
+        this.syncMapBootstrapConsistency = bootstrap;
+        this.syncMapWatchConsistency = watch;
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    /**
+     * Records the consistency modes the multimaps are read with.
+     */
+    public void multiMapReadConsistency(ReadConsistency bootstrap, ReadConsistency watch) {
+        this.multiMapBootstrapConsistency = bootstrap;
+        this.multiMapWatchConsistency = watch;
+    }
+
+    /**
+     * Registers the counter of the cluster map writes whose transactions have failed (see {@link TxnBatcher#failedCount()}).
+     */
+    public void txnOpsFailed(LongSupplier txnOpsFailed) {
+        this.txnOpsFailed = Objects.requireNonNull(txnOpsFailed);
+    }
+
+    public void staleRead() {
+        staleReads.incrementAndGet();
+    }
+
+    /**
+     * Records a stale read that has exceeded the max staleness (and has been retried in the default mode).
+     */
+    public void staleReadRejected() {
+        staleReadsRejected.incrementAndGet();
+    }
+
+    public long heartbeatsSent() {
+        return heartbeatsSent.get();
+    }
+
+    public long heartbeatsFailed() {
+        return heartbeatsFailed.get();
+    }
+
+    public long nodesLeft() {
+        return nodesLeft.get();
+    }
+
+    /**
+     * @see #nodeLeft(long)
+     */
+    public long lastFailureDetectionBoundMs() {
+        return lastFailureDetectionBoundMs.get();
+    }
+
+    /**
+     * @see #nodeLeft(long)
+     */
+    public long maxFailureDetectionBoundMs() {
+        return maxFailureDetectionBoundMs.get();
+    }
+
+    /**
+     * @see #nodeLeft(long)
+     */
+    public long avgFailureDetectionBoundMs() {
+        long count = nodesLeft.get();
+        return count == 0 ? 0 : totalFailureDetectionBoundMs.get() / count;
+    }
+
+    public ReadConsistency syncMapBootstrapConsistency() {
+        return syncMapBootstrapConsistency;
+    }
+
+    public ReadConsistency syncMapWatchConsistency() {
+        return syncMapWatchConsistency;
+    }
+
+    public ReadConsistency multiMapBootstrapConsistency() {
+        return multiMapBootstrapConsistency;
+    }
+
+    public ReadConsistency multiMapWatchConsistency() {
+        return multiMapWatchConsistency;
+    }
+
+    public long maxStalenessMs() {
+        return maxStalenessMs;
+    }
+
+    public long staleReads() {
+        return staleReads.get();
+    }
+
+    public long staleReadsRejected() {
+        return staleReadsRejected.get();
+    }
+
+    public long txnOpsFailed() {
+        return txnOpsFailed.getAsLong();
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("heartbeatsSent", heartbeatsSent())
+                .put("heartbeatsFailed", heartbeatsFailed())
+                .put("nodesLeft", nodesLeft())
+                .put("lastFailureDetectionBoundMs", lastFailureDetectionBoundMs())
+                .put("maxFailureDetectionBoundMs", maxFailureDetectionBoundMs())
+                .put("avgFailureDetectionBoundMs", avgFailureDetectionBoundMs())
+                .put("syncMapBootstrapConsistency", syncMapBootstrapConsistency().name())
+                .put("syncMapWatchConsistency", syncMapWatchConsistency().name())
+                .put("multiMapBootstrapConsistency", multiMapBootstrapConsistency().name())
+                .put("multiMapWatchConsistency", multiMapWatchConsistency().name())
+                .put("maxStalenessMs", maxStalenessMs())
+                .put("staleReads", staleReads())
+                .put("staleReadsRejected", staleReadsRejected())
+                .put("txnOpsFailed", txnOpsFailed());
+    }
+}
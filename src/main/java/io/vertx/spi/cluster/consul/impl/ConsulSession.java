@@ -0,0 +1,178 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.consul.SessionBehavior;
+import io.vertx.ext.consul.SessionOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.consul.ConsulClient;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Consul session of the node. The session is bound to the node's health check (along with the agent's serf health) and
+ * has delete behavior: once the node fails (i.e. stops sending heartbeats) or leaves, Consul invalidates the session
+ * and deletes all the KV entries the node has acquired by it (i.e. its event bus subscriptions) at once.
+ * No other node has to find and delete them.
+ * <p>
+ * Invalidation of a live node: a single late heartbeat (GC pause, Consul leader election) is enough for Consul to
+ * invalidate the session. The session is checked periodically (and on demand, see {@link #verify()}, i.e. whenever a
+ * lock operation gets rolled back); once it turns out to be gone, it is re-created and the re-creation handlers get
+ * notified so that the node's entries can be acquired again. Until then {@link #id()} is null, i.e. entries are written
+ * without the session rather than by a dead one.
+ */
+public final class ConsulSession {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsulSession.class);
+    private static final String SERF_HEALTH_CHECK_ID = "serfHealth";
+
+    private final Vertx rxVertx;
+    private final ConsulClient consulClient;
+    private final String name;
+    private final String checkId;
+    private final long checkIntervalMs;
+    // called once the session has been re-created.
+    private final List<Runnable> recreationHandlers = new CopyOnWriteArrayList<>();
+    // null until the session has been created, as well as while it is being re-created.
+    private volatile String id;
+    private volatile boolean active;
+    private volatile long timerId = -1;
+    // verification in progress, shared by all the callers of verify(). Guarded by this.
+    private Completable verification;
+
+    public ConsulSession(Vertx rxVertx, ConsulClient consulClient, String name, String checkId, long checkIntervalMs) {
+        this.rxVertx = Objects.requireNonNull(rxVertx);
+        this.consulClient = Objects.requireNonNull(consulClient);
+        this.name = Objects.requireNonNull(name);
+        this.checkId = Objects.requireNonNull(checkId);
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * Creates the session and starts checking it periodically. The node's check must already be registered and passing.
+     */
+    public Completable create() {
+        return createSession().doOnComplete(() -> {
+            active = true;
+            schedule();
+        });
+    }
+
+    /**
+     * Registers a handler that gets called once the session has been re-created (i.e. the entries held by the previous
+     * one have been deleted by Consul).
+     */
+    public void onRecreated(Runnable handler) {
+        recreationHandlers.add(Objects.requireNonNull(handler));
+    }
+
+    /**
+     * @return id of the session, null if it hasn't been created (or it has been destroyed, or it is being re-created).
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Checks whether the session still exists, re-creates it if it doesn't. Concurrent callers share the very same
+     * verification. Never fails: a session that can't be checked or re-created is retried by the next periodic check.
+     */
+    public synchronized Completable verify() {
+        if (!active) {
+            return Completable.complete();
+        }
+        if (Objects.isNull(verification)) {
+            verification = exists()
+                    .flatMapCompletable(exists -> exists ? Completable.complete() : recreate())
+                    .doOnError(throwable -> log.warn("Session: '{}' couldn't be verified. Details: '{}'", id, throwable.getMessage()))
+                    .onErrorComplete()
+                    .doFinally(() -> {
+                        synchronized (this) {
+                            verification = null;
+                        }
+                    })
+                    .cache();
+        }
+        return verification;
+    }
+
+    /**
+     * Destroys the session, i.e. all the entries acquired by it get deleted.
+     */
+    public Completable destroy() {
+        active = false;
+        rxVertx.cancelTimer(timerId);
+        String sessionId = id;
+        id = null;
+        if (Objects.isNull(sessionId)) {
+            return Completable.complete();
+        }
+        return consulClient
+                .rxDestroySession(sessionId)
+                .doOnComplete(() -> log.trace("Session: '{}' has been destroyed.", sessionId));
+    }
+
+    private Completable createSession() {
+        SessionOptions sessionOptions = new SessionOptions()
+                .setName(name)
+                .setBehavior(SessionBehavior.DELETE)
+                // entries of a failed node may be re-acquired right away.
+                .setLockDelay(0)
+                .setChecks(Arrays.asList(SERF_HEALTH_CHECK_ID, checkId));
+        return consulClient
+                .rxCreateSessionWithOptions(sessionOptions)
+                .doOnSuccess(sessionId -> {
+                    log.trace("Session: '{}' has been created.", sessionId);
+                    id = sessionId;
+                })
+                .toCompletable();
+    }
+
+    private Single<Boolean> exists() {
+        String sessionId = id;
+        if (Objects.isNull(sessionId)) {
+            // previous re-creation has failed.
+            return Single.just(false);
+        }
+        // a single session is looked up (rather than all the sessions of the cluster being listed by every node). Consul
+        // answers an unknown session with an empty (or null) body, which the client fails to map -> the session is missing.
+        // Any other failure means Consul couldn't be asked -> the session is kept.
+        return consulClient
+                .rxInfoSession(sessionId)
+                .map(session -> sessionId.equals(session.getId()))
+                .onErrorResumeNext(throwable -> isMissing(throwable) ? Single.just(false) : Single.error(throwable));
+    }
+
+    private static boolean isMissing(Throwable throwable) {
+        return throwable instanceof IndexOutOfBoundsException || throwable instanceof NullPointerException;
+    }
+
+    private Completable recreate() {
+        String invalidated = id;
+        // nothing gets written by the dead session in the meantime.
+        id = null;
+        log.error("Session: '{}' has been invalidated by Consul while the node is alive -> its event bus subscriptions have "
+                + "been deleted. Re-creating the session and re-acquiring the subscriptions.", invalidated);
+        return createSession().doOnComplete(() -> {
+            if (!active) {
+                // destroyed in the meantime -> the new session must not outlive the node.
+                destroy().subscribe(() -> {
+                }, throwable -> log.warn("Session couldn't be destroyed. Details: '{}'", throwable.getMessage()));
+                return;
+            }
+            recreationHandlers.forEach(Runnable::run);
+        });
+    }
+
+    private void schedule() {
+        if (!active) {
+            return;
+        }
+        timerId = rxVertx.setTimer(Math.max(1, checkIntervalMs), timer -> verify().subscribe(this::schedule));
+    }
+}
@@ -1,22 +1,28 @@
 package io.vertx.spi.cluster.consul.impl;
 
-import io.reactivex.Observable;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.consul.KeyValue;
-import io.vertx.ext.consul.KeyValueList;
-import io.vertx.ext.consul.Watch;
-import io.vertx.reactivex.core.Vertx;
-import io.vertx.reactivex.ext.consul.ConsulClient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Distributed map implementation based on consul key-value store.
+ * Distributed map implementation based on consul key-value store. Entries of a map named {@code name} are stored under
+ * {@code <root prefix>/<name>/}, spread over the buckets of the {@link SyncMapLayout} (see {@link ConsulSyncMapRegistry}).
+ * <p>
+ * Consistency: changes received from Consul are staged while a state is being applied (out of the event loop, on the
+ * watch lane) and published once the whole state has been applied: small deltas in place, large ones by swapping in a
+ * new version of the internal cache atomically, i.e. readers never see a half-applied large delta. Views
+ * ({@link #keySet()}, {@link #values()}, {@link #entrySet()}) are of the version that is current when they are obtained.
  * <p>
  * Note: Since it is a sync - based map (i.e blocking) - run potentially "blocking code" out of vertx-event-loop context.
  * TODO: 1) most of logging has to be removed when consul cluster manager is more or less stable.
@@ -27,59 +33,59 @@ import java.util.concurrent.ConcurrentHashMap;
 public final class ConsulSyncMap implements Map<String, String> {
 
     private final static Logger log = LoggerFactory.getLogger(ConsulSyncMap.class);
-    private static final String CLUSTER_MAP_NAME = "__vertx.haInfo";
-
-    // thread - sage map instance.
-    private static volatile ConsulSyncMap instance;
-    // used to lock the map creation operation.
-    private static Object lock = new Object();
+    // max number of staged changes that are published in place, larger deltas are published by swapping the cache.
+    private static final int IN_PLACE_LIMIT = 64;
 
     private final String name;
-    private final Vertx rxVertx;
-    private final ConsulClient consulClient;
-
-    // internal cache of consul KV store.
-    private Map<String, String> cache;
-
-    // thread - safe.
-    public static ConsulSyncMap getInstance(final Vertx rxVertx, final ConsulClient consulClient) {
-        ConsulSyncMap result = instance;
-        if (Objects.isNull(result)) {
-            synchronized (lock) {
-                result = instance;
-                if (Objects.isNull(result)) {
-                    instance = result = new ConsulSyncMap(rxVertx, consulClient);
-                    log.trace("Instance of '{}' has been successfully created.", ConsulSyncMap.class.getSimpleName());
-                }
-            }
-        }
-        return result;
-    }
+    private final SyncMapLayout layout;
+    // watch results are applied one by one on this lane -> out of the event loop context.
+    private final ClusterEventDispatcher.Lane watchLane;
+    // all the mutations are sent to consul in batches.
+    private final TxnBatcher txnBatcher;
+    // values are (de)compressed transparently.
+    private final ValueCodec valueCodec;
+    // bucket -> latest state received from consul, a key that couldn't be written is reverted to its value of it.
+    private final IntFunction<Buffer> lastStates;
+    // key relative to the registry root (<map name>/<key>) -> modify index of the value the internal cache holds.
+    // Only touched on the watch lane (as well as the rest of the apply state).
+    private final Map<String, AppliedIndex> appliedIndexes = new HashMap<>();
+    // number of applied keys per bucket.
+    private final int[] bucketSizes;
+    // generation of the consul KV store state being applied, used to find out the removed keys.
+    private long generation;
+    private long currentGeneration;
+    // bucket the state being applied belongs to, along with the number of its tracked keys stamped by the state so far
+    // (i.e. if it ends up equal to the bucket size, no tracked key is missing from the state).
+    private int currentBucket;
+    private int applicable;
+    // key relative to the registry root (<map name>/<key>) -> number of local writes that haven't been committed yet.
+    private final Map<String, Integer> pendingWrites = new ConcurrentHashMap<>();
 
-    private ConsulSyncMap(Vertx rxVertx, ConsulClient consulClient) {
-        Objects.requireNonNull(rxVertx);
-        Objects.requireNonNull(consulClient);
-        this.name = CLUSTER_MAP_NAME;
-        this.rxVertx = rxVertx;
-        this.consulClient = consulClient;
-        initCache();
-        registerWatcher();
-        // TODO : removed it when consul cluster manager is more or less stable.
-        printCache();
+    // internal cache of consul KV store. Replaced as a whole when a large delta gets published.
+    private volatile Map<String, String> cache = new ConcurrentHashMap<>();
+    // local writes (shared) vs cache swap (exclusive) -> no local write gets lost by a swap.
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // changes of the state being applied (null value -> removal), only touched on the watch lane.
+    private final Map<String, String> staged = new HashMap<>();
+    // keys whose modify index changes along with the staged changes, it is recorded once they have been published.
+    private final List<AppliedIndex> stagedIndexes = new ArrayList<>();
+
+    /**
+     * Maps are created by {@link ConsulSyncMapRegistry} only, which keeps them in sync with Consul KV store.
+     */
+    ConsulSyncMap(String name, SyncMapLayout layout, ClusterEventDispatcher.Lane watchLane, TxnBatcher txnBatcher,
+                  ValueCodec valueCodec, IntFunction<Buffer> lastStates) {
+        this.name = Objects.requireNonNull(name);
+        this.layout = Objects.requireNonNull(layout);
+        this.bucketSizes = new int[layout.bucketCount()];
+        this.watchLane = Objects.requireNonNull(watchLane);
+        this.txnBatcher = Objects.requireNonNull(txnBatcher);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.lastStates = Objects.requireNonNull(lastStates);
     }
 
-    private void initCache() {
-        log.trace("Initializing ConsulSyncMap internal cache ... ");
-        this.cache = new ConcurrentHashMap<>();
-        Map<String, String> consulMap = consulClient
-                .rxGetValues(name)
-                .toObservable()
-                .filter(keyValueList -> Objects.nonNull(keyValueList.getList()))
-                .flatMapIterable(KeyValueList::getList)
-                .toMap(keyValue -> keyValue.getKey().replace(CLUSTER_MAP_NAME + "/", ""), KeyValue::getValue)
-                .blockingGet();
-        cache.putAll(consulMap);
-        log.trace("Internal cache has been initialized: '{}'", Json.encodePrettily(cache));
+    public String name() {
+        return name;
     }
 
     // !!! --- so far just really dummy impl. !!! --- //
@@ -113,37 +119,50 @@ public final class ConsulSyncMap implements Map<String, String> {
     @Override
     public String put(String key, String value) {
         log.trace("Putting KV: '{}' -> '{}' to Consul KV store.", key, value);
-        // async
-        consulClient.rxPutValue(name + "/" + key, value)
-                .subscribe(
-                        res -> log.trace("KV: '{}' -> '{}' has been placed to Consul KV store.", key, value),
-                        throwable -> log.trace("Can't put KV: '{}' -> '{}' to Consul KV store. Details: '{}'", key, value, throwable.getMessage()));
-        return cache.put(key, value);
+        // async -> write-behind.
+        swapLock.readLock().lock();
+        try {
+            write(key, ConsulTxn.set(keyPath(key), valueCodec.encode(value)), false);
+            return cache.put(key, value);
+        } finally {
+            swapLock.readLock().unlock();
+        }
     }
 
     @Override
     public String remove(Object key) {
-        consulClient.rxDeleteValue(name + "/" + key).subscribe();
-        return cache.remove(key);
+        log.trace("Removing key: '{}' from Consul KV store.", key);
+        swapLock.readLock().lock();
+        try {
+            write(String.valueOf(key), ConsulTxn.delete(keyPath(String.valueOf(key))), true);
+            return cache.remove(key);
+        } finally {
+            swapLock.readLock().unlock();
+        }
     }
 
     @Override
     public void putAll(@NotNull Map<? extends String, ? extends String> m) {
         log.trace("Putting: '{}' into Consul KV store.", Json.encodePrettily(m));
-        Observable
-                .fromIterable(m.entrySet())
-                .flatMapSingle(entry -> consulClient.rxPutValue(name + "/" + entry.getKey(), entry.getValue()))
-                .subscribe();
-        cache.putAll(m);
+        m.forEach(this::put);
     }
 
     @Override
     public void clear() {
-        log.trace("Clearing the KV store name by key prefix: '{}'", CLUSTER_MAP_NAME);
-        consulClient.rxDeleteValues(CLUSTER_MAP_NAME).subscribe(() -> {
-            log.trace("Consul KV store has been cleared by key prefix: '{}'", CLUSTER_MAP_NAME);
-        });
-        cache.clear();
+        for (int bucket = 0; bucket < layout.bucketCount(); bucket++) {
+            String prefix = layout.prefix(bucket) + name + "/";
+            log.trace("Clearing the KV store name by key prefix: '{}'", prefix);
+            txnBatcher.submit(ConsulTxn.deleteTree(prefix))
+                    .subscribe(
+                            res -> log.trace("Consul KV store has been cleared by key prefix: '{}'", prefix),
+                            throwable -> log.error("Can't clear Consul KV store by key prefix: '{}'. Details: '{}'", prefix, throwable.getMessage()));
+        }
+        swapLock.readLock().lock();
+        try {
+            cache.clear();
+        } finally {
+            swapLock.readLock().unlock();
+        }
     }
 
     @NotNull
@@ -165,71 +184,290 @@ public final class ConsulSyncMap implements Map<String, String> {
     }
 
     /**
-     * Watch registration. Watch has to be registered in order to keep the internal cache consistent and in sync with central
-     * Consul KV store. Watch listens to events that are coming from Consul KV store and updates the internal cache appropriately.
+     * Owns the entry of the given key (relative to the registry root prefix, i.e. {@code <map name>/<key>}).
+     */
+    boolean owns(String relativeKey) {
+        return relativeKey.length() > name.length()
+                && relativeKey.charAt(name.length()) == '/'
+                && relativeKey.startsWith(name);
+    }
+
+    /**
+     * Starts applying a consul KV store state of the given bucket (i.e. all the entries of this map within the bucket) to
+     * the internal cache. The entries are then handed over one by one by {@link #applyEntry(String, byte[], long)} and the
+     * state is completed by {@link #endApply()}. Always runs on the watch lane, i.e. one state at a time.
+     * <p>
+     * Every key's modify index is compared to the one of the value the cache holds, so only the keys that have actually
+     * changed get (re)applied (and decoded). The state is compared to the latest applied one (not to the watch's previous
+     * result) so that a state rejected by the dispatcher gets caught up by the next one. A state that has not been completed
+     * (i.e. a malformed response) never removes anything and leaves no trace: modify indexes are only recorded once the
+     * state has been published, so the next state re-applies every key the incomplete one has touched.
      */
-    private void registerWatcher() {
-        Watch
-                .keyPrefix(CLUSTER_MAP_NAME, rxVertx.getDelegate())
-                .setHandler(promise -> {
-                    if (promise.succeeded()) {
-                        // We still need some sort of level synchronization on the internal cache since this is the entry point where the cache gets updated and in sync with Consul KV store.
-                        // TODO : is it correct to do so ? Investigate moore deeply how concurrent hash map handles concurrent writes
-                        synchronized (this) {
-                            log.trace("Watch for Consul KV store has been registered.");
-                            // TODO : more its are required to test this behaviour.
-                            KeyValueList prevKvList = promise.prevResult();
-                            KeyValueList nextKvList = promise.nextResult();
-
-                            if (Objects.isNull(prevKvList) && Objects.nonNull(nextKvList) && Objects.nonNull(nextKvList.getList())) {
-                                nextKvList.getList().forEach(keyValue -> {
-                                    String extractedKey = keyValue.getKey().replace(CLUSTER_MAP_NAME + "/", "");
-                                    log.trace("Adding the KV: '{}' -> '{}' to local cache.", extractedKey, keyValue.getValue());
-                                    cache.put(extractedKey, keyValue.getValue());
-                                });
-                            } else if ((Objects.isNull(nextKvList) || Objects.isNull(nextKvList.getList()))) {
-                                log.trace("Clearing all cache since Consul KV store seems to be empty.");
-                                cache.clear();
-                            } else if (Objects.nonNull(prevKvList.getList()) && Objects.nonNull(nextKvList.getList())) {
-                                if (nextKvList.getList().size() == prevKvList.getList().size()) {
-                                    nextKvList.getList().forEach(keyValue -> {
-                                        String extractedKey = keyValue.getKey().replace(CLUSTER_MAP_NAME + "/", "");
-                                        log.trace("Updating the KV: '{}' -> '{}' to local cache.", extractedKey, keyValue.getValue());
-                                        cache.put(extractedKey, keyValue.getValue());
-                                    });
-                                } else if (nextKvList.getList().size() > prevKvList.getList().size()) {
-                                    Set<KeyValue> nextS = new HashSet<>(nextKvList.getList());
-                                    nextS.removeAll(new HashSet<>(prevKvList.getList()));
-                                    if (!nextS.isEmpty()) {
-                                        nextS.forEach(keyValue -> {
-                                            String extractedKey = keyValue.getKey().replace(CLUSTER_MAP_NAME + "/", "");
-                                            log.trace("Adding the KV: '{}' -> '{}' to local cache.", extractedKey, keyValue.getValue());
-                                            cache.put(extractedKey, keyValue.getValue());
-                                        });
-                                    }
-                                } else {
-                                    Set<KeyValue> prevS = new HashSet<>(prevKvList.getList());
-                                    prevS.removeAll(new HashSet<>(nextKvList.getList()));
-                                    if (!prevS.isEmpty()) {
-                                        prevS.forEach(keyValue -> {
-                                            String extractedKey = keyValue.getKey().replace(CLUSTER_MAP_NAME + "/", "");
-                                            log.trace("Removing the KV: '{}' -> '{}' from local cache.", extractedKey, keyValue.getValue());
-                                            cache.put(extractedKey, keyValue.getValue());
-                                            cache.remove(extractedKey);
-                                        });
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        log.error("Failed to register a watch. Details: '{}'", promise.cause().getMessage());
+    void beginApply(int bucket) {
+        currentGeneration = ++generation;
+        currentBucket = bucket;
+        applicable = 0;
+        staged.clear();
+        stagedIndexes.clear();
+    }
+
+    /**
+     * @param relativeKey key relative to the registry root prefix, i.e. {@code <map name>/<key>}.
+     */
+    void applyEntry(String relativeKey, byte[] value, long modifyIndex) {
+        AppliedIndex applied = appliedIndexes.get(relativeKey);
+        if (pendingWrites.containsKey(relativeKey)) {
+            // local write is in progress -> the cache already holds a newer value than this state. A key that isn't
+            // tracked yet doesn't count, otherwise it could cover up a tracked key that is missing from the state.
+            if (Objects.nonNull(applied)) {
+                stamp(applied);
+            }
+            return;
+        }
+        if (Objects.isNull(applied)) {
+            applied = track(relativeKey, currentBucket);
+        } else if (applied.modifyIndex >= modifyIndex) {
+            // either unchanged or an echo of a local write that has already been applied.
+            stamp(applied);
+            return;
+        }
+        applied.stagedModifyIndex = modifyIndex;
+        stagedIndexes.add(applied);
+        stamp(applied);
+        String extractedKey = relativeKey.substring(name.length() + 1);
+        String decodedValue;
+        try {
+            decodedValue = valueCodec.decode(value);
+        } catch (IllegalArgumentException e) {
+            log.error("Can't decode the value of key: '{}' -> ignored. Details: '{}'", extractedKey, e.getMessage());
+            return;
+        }
+        log.trace("Staging the KV: '{}' -> '{}'.", extractedKey, decodedValue);
+        staged.put(extractedKey, decodedValue);
+    }
+
+    private void stamp(AppliedIndex applied) {
+        applied.generation = currentGeneration;
+        applicable++;
+    }
+
+    void endApply() {
+        if (bucketSizes[currentBucket] != applicable) {
+            stageRemovals();
+        }
+        publish();
+        stagedIndexes.forEach(applied -> applied.modifyIndex = applied.stagedModifyIndex);
+        stagedIndexes.clear();
+    }
+
+    private void stageRemovals() {
+        Iterator<Map.Entry<String, AppliedIndex>> iterator = appliedIndexes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AppliedIndex> entry = iterator.next();
+            AppliedIndex applied = entry.getValue();
+            if (applied.bucket == currentBucket && applied.generation != currentGeneration && !pendingWrites.containsKey(entry.getKey())) {
+                String extractedKey = entry.getKey().substring(name.length() + 1);
+                log.trace("Staging the removal of KV: '{}'.", extractedKey);
+                staged.put(extractedKey, null);
+                iterator.remove();
+                bucketSizes[applied.bucket]--;
+            }
+        }
+    }
+
+    /**
+     * Publishes the staged changes. Local writes may have started after a key has been staged -> both paths exclude
+     * local writes while publishing and never touch a key that has a pending local write (the cache already holds a newer
+     * value of it). Small deltas are applied to the cache in place. Large deltas are applied to a copy of the cache which
+     * is then swapped in: the copy happens without blocking anyone, only the swap itself excludes local writes -> the keys
+     * written locally in the meantime are carried over to the new version right before it gets published.
+     */
+    private void publish() {
+        if (staged.isEmpty()) {
+            return;
+        }
+        if (staged.size() <= IN_PLACE_LIMIT) {
+            swapLock.writeLock().lock();
+            try {
+                Map<String, String> current = cache;
+                staged.forEach((key, value) -> {
+                    if (!pendingWrites.containsKey(name + "/" + key)) {
+                        apply(current, key, value);
                     }
-                })
-                .start();
+                });
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } else {
+            log.trace("Publishing '{}' changes of sync map: '{}' as a new version.", staged.size(), name);
+            Map<String, String> next = new ConcurrentHashMap<>(cache);
+            staged.forEach((key, value) -> apply(next, key, value));
+            swapLock.writeLock().lock();
+            try {
+                Map<String, String> previous = cache;
+                int prefixLength = name.length() + 1;
+                pendingWrites.keySet().forEach(relativeKey -> {
+                    String key = relativeKey.substring(prefixLength);
+                    apply(next, key, previous.get(key));
+                });
+                cache = next;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+        staged.clear();
     }
 
-    // just a dummy helper method [it's gonna get removed] to print out every 5 sec the data that resides within the internal cache.
-    private void printCache() {
-        rxVertx.setPeriodic(5000, handler -> log.trace("Internal cache: '{}'", Json.encodePrettily(cache)));
+    private static void apply(Map<String, String> target, String key, String value) {
+        if (Objects.isNull(value)) {
+            target.remove(key);
+        } else {
+            target.put(key, value);
+        }
+    }
+
+    /**
+     * Sends a local write to consul. The write is tracked as pending until it gets committed, the watch doesn't touch the
+     * key in the meantime (so a stale state can't overwrite the newer local value). Once committed, the resulting modify
+     * index is recorded, so the watch recognizes the echo of the write and skips it. Once failed, the key is reverted to
+     * its latest value in consul.
+     */
+    private void write(String key, JsonObject op, boolean deletion) {
+        String relativeKey = name + "/" + key;
+        pendingWrites.merge(relativeKey, 1, Integer::sum);
+        txnBatcher.submit(op).subscribe(
+                result -> {
+                    log.trace("Write of key: '{}' has been committed to Consul KV store.", key);
+                    Long modifyIndex = result.getLong("ModifyIndex");
+                    localWriteDone(relativeKey, () -> localWriteCommitted(relativeKey, deletion ? null : modifyIndex, deletion));
+                },
+                throwable -> {
+                    log.error("Can't write key: '{}' to Consul KV store. Details: '{}'", key, throwable.getMessage());
+                    localWriteDone(relativeKey, () -> localWriteFailed(relativeKey));
+                });
+    }
+
+    private void localWriteDone(String relativeKey, Runnable onLane) {
+        if (!watchLane.dispatch(onLane)) {
+            // lane is full -> the key is simply re-applied by the watch.
+            decrementPendingWrites(relativeKey);
+        }
+    }
+
+    /**
+     * Runs on the watch lane.
+     *
+     * @param modifyIndex modify index the write has resulted in, null if unknown -> the key gets re-applied from consul
+     *                    by the next watch result.
+     */
+    private void localWriteCommitted(String relativeKey, Long modifyIndex, boolean deleted) {
+        decrementPendingWrites(relativeKey);
+        AppliedIndex applied = appliedIndexes.get(relativeKey);
+        if (deleted) {
+            if (Objects.nonNull(applied)) {
+                appliedIndexes.remove(relativeKey);
+                bucketSizes[applied.bucket]--;
+            }
+            return;
+        }
+        if (Objects.isNull(applied)) {
+            applied = track(relativeKey, layout.bucketOf(relativeKey));
+        }
+        applied.modifyIndex = Objects.isNull(modifyIndex) ? -1 : Math.max(applied.modifyIndex, modifyIndex);
+        applied.generation = generation;
+    }
+
+    /**
+     * Runs on the watch lane. The cache holds a value that has never made it to consul and the watch doesn't redeliver a
+     * key that hasn't changed -> the key is reverted to its value of the latest state of its bucket (or removed if it isn't
+     * there), unless another local write of the key is pending (it decides the value then).
+     */
+    private void localWriteFailed(String relativeKey) {
+        decrementPendingWrites(relativeKey);
+        if (pendingWrites.containsKey(relativeKey)) {
+            return;
+        }
+        int bucket = layout.bucketOf(relativeKey);
+        byte[][] storedValue = new byte[1][];
+        long[] storedIndex = new long[1];
+        try {
+            KvListDecoder.decode(lastStates.apply(bucket), layout.prefix(bucket).length(), (key, value, modifyIndex, session) -> {
+                if (key.equals(relativeKey)) {
+                    storedValue[0] = value;
+                    storedIndex[0] = modifyIndex;
+                }
+            });
+        } catch (IOException e) {
+            // last state has been decoded successfully already.
+            log.error("Can't revert key: '{}'. Details: '{}'", relativeKey, e.getMessage());
+            return;
+        }
+        String key = relativeKey.substring(name.length() + 1);
+        String storedDecoded = null;
+        if (Objects.nonNull(storedValue[0])) {
+            try {
+                storedDecoded = valueCodec.decode(storedValue[0]);
+            } catch (IllegalArgumentException e) {
+                log.error("Can't decode the value of key: '{}' -> not reverted. Details: '{}'", key, e.getMessage());
+            }
+        }
+        swapLock.writeLock().lock();
+        try {
+            if (pendingWrites.containsKey(relativeKey)) {
+                // written again meanwhile.
+                return;
+            }
+            log.trace("Reverting the KV: '{}' -> '{}'.", key, storedDecoded);
+            if (Objects.nonNull(storedDecoded) || Objects.isNull(storedValue[0])) {
+                apply(cache, key, storedDecoded);
+            }
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        AppliedIndex applied = appliedIndexes.get(relativeKey);
+        if (Objects.nonNull(storedValue[0])) {
+            if (Objects.isNull(applied)) {
+                applied = track(relativeKey, bucket);
+            }
+            applied.modifyIndex = storedIndex[0];
+            applied.generation = generation;
+        } else if (Objects.nonNull(applied)) {
+            appliedIndexes.remove(relativeKey);
+            bucketSizes[applied.bucket]--;
+        }
+    }
+
+    private AppliedIndex track(String relativeKey, int bucket) {
+        AppliedIndex applied = new AppliedIndex(bucket);
+        appliedIndexes.put(relativeKey, applied);
+        bucketSizes[bucket]++;
+        return applied;
+    }
+
+    private void decrementPendingWrites(String relativeKey) {
+        pendingWrites.computeIfPresent(relativeKey, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Modify index of the value the internal cache holds for a key, along with the generation of the state it has been
+     * seen in for the last time and the bucket the key belongs to.
+     */
+    private static final class AppliedIndex {
+        private final int bucket;
+        private long modifyIndex;
+        // modify index of the state being applied, see stagedIndexes.
+        private long stagedModifyIndex;
+        private long generation;
+
+        private AppliedIndex(int bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Builds the consul KV store key the given map key is stored under.
+     */
+    public String keyPath(String key) {
+        return layout.keyPath(name + "/" + key);
     }
 }
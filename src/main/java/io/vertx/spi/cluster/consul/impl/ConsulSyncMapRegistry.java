@@ -0,0 +1,414 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.consul.ConsulClientOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.spi.cluster.consul.ConsulClusterManagerOptions;
+import io.vertx.spi.cluster.consul.ReadConsistency;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of named {@link ConsulSyncMap}s. All the maps are stored according to the {@link SyncMapLayout}: either under a
+ * single root prefix watched by a single blocking query, or spread over N buckets watched by a blocking query each (so
+ * that a single change re-downloads 1/N of the data only). Every state received from Consul is streamed by
+ * {@link KvListDecoder} and every entry is routed to the appropriate map by its name.
+ * <p>
+ * Migration: a registry of the sharded layout moves the entries it finds in the flat layout into their buckets before
+ * it warms up the caches, i.e. switching a cluster to buckets doesn't lose any entry.
+ * <p>
+ * Optionally the latest state is saved to a local {@link SyncMapSnapshot} every now and then: a restarted node then
+ * populates the maps from the snapshot and catches up with Consul from the saved indexes, i.e. the restart doesn't wait
+ * for all the maps to be downloaded.
+ */
+public final class ConsulSyncMapRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsulSyncMapRegistry.class);
+
+    private final Vertx rxVertx;
+    private final ConsulClientOptions consulClientOptions;
+    private final ConsulTxn txn;
+    private final TxnBatcher txnBatcher;
+    private final SyncMapLayout layout;
+    private final ValueCodec valueCodec;
+    private final ReadConsistency bootstrapConsistency;
+    private final ConsulClusterMetrics metrics;
+    private final long maxStalenessMs;
+    // states of all the buckets are applied to all the maps one by one on this lane.
+    private final ClusterEventDispatcher.Lane watchLane;
+    private final KvPrefixWatch[] watches;
+    private final Map<String, ConsulSyncMap> maps = new ConcurrentHashMap<>();
+    // latest (raw) state of every bucket, replaced on the watch lane only. States are never modified once received ->
+    // a new map gets seeded from them on the calling thread.
+    private final AtomicReferenceArray<Buffer> lastStates;
+    // consul index of the latest state of every bucket, only touched on the watch lane.
+    private final long[] lastIndexes;
+    // null if snapshots are disabled.
+    private final SyncMapSnapshot snapshot;
+    private final long snapshotIntervalMs;
+    // consul indexes of the latest saved snapshot, only touched on the watch lane.
+    private long[] savedIndexes;
+    private long snapshotTimerId = -1;
+
+    private long printCacheTimerId = -1;
+    // initialization is shared by all the callers of init().
+    private Completable initialization;
+
+    /**
+     * @param options    layout, snapshot and read consistency of the maps are taken from here.
+     * @param valueCodec codec of the map values, shared with the multimaps.
+     */
+    public ConsulSyncMapRegistry(Vertx rxVertx, ConsulClientOptions consulClientOptions, ConsulClusterManagerOptions options,
+                                 ClusterEventDispatcher dispatcher, ConsulTxn txn, TxnBatcher txnBatcher,
+                                 ValueCodec valueCodec, ConsulClusterMetrics metrics) {
+        this.rxVertx = Objects.requireNonNull(rxVertx);
+        this.consulClientOptions = Objects.requireNonNull(consulClientOptions);
+        this.txn = Objects.requireNonNull(txn);
+        this.txnBatcher = Objects.requireNonNull(txnBatcher);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.layout = new SyncMapLayout(options.getSyncMapBuckets());
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.bootstrapConsistency = options.getSyncMapBootstrapConsistency();
+        this.maxStalenessMs = options.getMaxStalenessMs();
+        metrics.readConsistency(options.getSyncMapBootstrapConsistency(), options.getSyncMapWatchConsistency(), maxStalenessMs);
+        this.watchLane = Objects.requireNonNull(dispatcher).lane(SyncMapLayout.ROOT_PREFIX);
+        this.watches = new KvPrefixWatch[layout.bucketCount()];
+        this.lastStates = new AtomicReferenceArray<>(layout.bucketCount());
+        this.lastIndexes = new long[layout.bucketCount()];
+        this.savedIndexes = new long[layout.bucketCount()];
+        for (int bucket = 0; bucket < layout.bucketCount(); bucket++) {
+            watches[bucket] = new KvPrefixWatch(rxVertx.getDelegate(), consulClientOptions, layout.prefix(bucket),
+                    options.getSyncMapWatchConsistency(), maxStalenessMs, metrics);
+            lastStates.set(bucket, Buffer.buffer());
+        }
+        this.snapshot = Objects.isNull(options.getSyncMapSnapshotPath()) ? null : new SyncMapSnapshot(Paths.get(options.getSyncMapSnapshotPath()));
+        this.snapshotIntervalMs = options.getSyncMapSnapshotIntervalMs();
+    }
+
+    /**
+     * Gets the map by its name, creates it if it doesn't exist yet. A new map gets seeded on the calling thread from the
+     * latest state of every bucket received from Consul (no IO, no waiting), i.e. the map is never handed over empty
+     * while its entries have been received already. A state received meanwhile is applied to the map by a catch-up on
+     * the watch lane.
+     */
+    public ConsulSyncMap getMap(String name) {
+        Objects.requireNonNull(name);
+        if (name.isEmpty() || name.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("Sync map name must be non empty and must not contain '/': " + name);
+        }
+        ConsulSyncMap existing = maps.get(name);
+        if (Objects.nonNull(existing)) {
+            return existing;
+        }
+        Buffer[] seededStates = new Buffer[lastStates.length()];
+        ConsulSyncMap syncMap = maps.computeIfAbsent(name, mapName -> {
+            log.trace("Creating sync map: '{}'.", mapName);
+            ConsulSyncMap map = new ConsulSyncMap(mapName, layout, watchLane, txnBatcher, valueCodec, lastStates::get);
+            // the map isn't visible to the watch lane until it's returned -> it's safe to apply the states here.
+            for (int bucket = 0; bucket < seededStates.length; bucket++) {
+                seededStates[bucket] = lastStates.get(bucket);
+                seed(map, bucket, seededStates[bucket]);
+            }
+            return map;
+        });
+        // seeded by this call (not by a concurrent one) -> it catches up with the states received while it's been seeded.
+        if (Objects.nonNull(seededStates[0]) && !watchLane.dispatch(() -> catchUp(syncMap, seededStates))) {
+            // lane is full -> the map gets populated by the next state of every bucket instead.
+            log.warn("Sync map: '{}' couldn't catch up, it does once the next state is received.", name);
+        }
+        return syncMap;
+    }
+
+    /**
+     * Asynchronously warms up the caches of all the maps (from the local snapshot if there is one, from Consul otherwise)
+     * and registers the watches that keep them in sync with Consul KV store. Subsequent calls share the very same initialization.
+     */
+    public synchronized Completable init() {
+        if (Objects.isNull(initialization)) {
+            initialization = migrateFlatLayout()
+                    .andThen(loadSnapshot())
+                    .flatMapCompletable(loaded -> loaded ? Completable.complete() : initCaches())
+                    .doOnComplete(() -> {
+                        scheduleSnapshots();
+                        // TODO : removed it when consul cluster manager is more or less stable.
+                        printCache();
+                    })
+                    .cache();
+        }
+        return initialization;
+    }
+
+    /**
+     * Moves the entries of the flat layout into their buckets (if the layout is sharded). Every entry is moved by a
+     * create-only set of its bucket key along with a check-and-delete of its flat key within a single transaction:
+     * <ul>
+     * <li>an entry that gets concurrently updated by a node of the flat layout is never lost (the transaction is rolled
+     * back and the entry is moved by the next node that starts).</li>
+     * <li>an entry that has already been written by a node of the sharded layout is never overwritten by the older flat
+     * value: its flat key is only deleted.</li>
+     * </ul>
+     * Entries are moved in chunks; a chunk that gets rolled back is moved entry by entry, so a single conflict doesn't
+     * hold the rest back. Failures don't prevent the registry from being initialized.
+     */
+    private Completable migrateFlatLayout() {
+        if (!layout.sharded()) {
+            return Completable.complete();
+        }
+        String flatPrefix = SyncMapLayout.flatPrefix();
+        // entries are moved by check-and-set anyway -> the cheapest mode is good enough.
+        KvPrefixWatch flatWatch = new KvPrefixWatch(rxVertx.getDelegate(), consulClientOptions, flatPrefix,
+                ReadConsistency.STALE, maxStalenessMs, metrics);
+        return flatWatch
+                .fetch(ReadConsistency.STALE)
+                .flatMapCompletable(result -> {
+                    List<JsonObject[]> moves = new ArrayList<>();
+                    KvListDecoder.decode(result.body(), flatPrefix.length(), (key, value, modifyIndex, session) -> {
+                        if (key.indexOf('/') > 0) {
+                            // raw value -> moved as is (i.e. compressed or not).
+                            moves.add(new JsonObject[]{
+                                    ConsulTxn.cas(layout.keyPath(key), value, 0),
+                                    ConsulTxn.deleteCas(flatPrefix + key, modifyIndex)});
+                        }
+                    });
+                    if (moves.isEmpty()) {
+                        return Completable.complete();
+                    }
+                    log.info("Migrating '{}' sync map entries into '{}' buckets.", moves.size(), layout.bucketCount());
+                    List<Completable> txns = new ArrayList<>();
+                    // max ops is even -> an entry's set and delete always go together.
+                    int movesPerTxn = ConsulTxn.MAX_OPS / 2;
+                    for (int from = 0; from < moves.size(); from += movesPerTxn) {
+                        List<JsonObject[]> chunk = moves.subList(from, Math.min(moves.size(), from + movesPerTxn));
+                        txns.add(move(chunk).onErrorResumeNext(throwable -> throwable instanceof ConsulTxn.RolledBackException
+                                ? Completable.mergeDelayError(chunk.stream().map(this::moveOne).collect(Collectors.toList()))
+                                : Completable.error(throwable)));
+                    }
+                    return Completable.mergeDelayError(txns);
+                })
+                .doOnError(throwable -> log.warn("Sync map entries couldn't be migrated into buckets. Details: '{}'", throwable.getMessage()))
+                .onErrorComplete()
+                .doFinally(flatWatch::stop);
+    }
+
+    private Completable move(List<JsonObject[]> moves) {
+        JsonArray ops = new JsonArray();
+        moves.forEach(move -> ops.add(move[0]).add(move[1]));
+        return txn.execute(ops).toCompletable();
+    }
+
+    /**
+     * Moves a single entry. If it gets rolled back, either the bucket key already exists (it is newer -> the flat key is
+     * just deleted) or the flat key has been modified meanwhile (the deletion fails as well -> left to the next node).
+     */
+    private Completable moveOne(JsonObject[] move) {
+        return move(Collections.singletonList(move))
+                .onErrorResumeNext(throwable -> throwable instanceof ConsulTxn.RolledBackException
+                        ? txn.execute(new JsonArray().add(move[1])).toCompletable()
+                        : Completable.error(throwable));
+    }
+
+    /**
+     * Warms up the caches from the local snapshot and registers the watches from the saved indexes.
+     *
+     * @return false if there is no usable snapshot.
+     */
+    private Single<Boolean> loadSnapshot() {
+        if (Objects.isNull(snapshot)) {
+            return Single.just(false);
+        }
+        // file IO -> out of the event loop.
+        return onWatchLane(() -> {
+            SyncMapSnapshot.Entry[] entries = snapshot.load(layout.bucketCount());
+            if (Objects.isNull(entries)) {
+                return false;
+            }
+            for (int bucket = 0; bucket < entries.length; bucket++) {
+                log.trace("Sync map caches of bucket: '{}' are warmed up from the snapshot at index: '{}'.", bucket, entries[bucket].index());
+                applyChanges(bucket, entries[bucket].body(), entries[bucket].index());
+                savedIndexes[bucket] = entries[bucket].index();
+            }
+            return true;
+        }).doOnSuccess(loaded -> {
+            if (loaded) {
+                for (int bucket = 0; bucket < watches.length; bucket++) {
+                    registerWatcher(bucket, savedIndexes[bucket]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches every bucket, applies it and registers its watch from the index it has been fetched at.
+     */
+    private Completable initCaches() {
+        log.trace("Initializing sync map caches ... ");
+        List<Completable> buckets = new ArrayList<>(watches.length);
+        for (int bucket = 0; bucket < watches.length; bucket++) {
+            int fetchedBucket = bucket;
+            buckets.add(watches[bucket]
+                    .fetch(bootstrapConsistency)
+                    .flatMap(result -> onWatchLane(() -> {
+                        applyChanges(fetchedBucket, result.body(), result.index());
+                        return result.index();
+                    }))
+                    .doOnSuccess(index -> registerWatcher(fetchedBucket, index))
+                    .toCompletable());
+        }
+        return Completable.merge(buckets);
+    }
+
+    private <T> Single<T> onWatchLane(Callable<T> task) {
+        return Single.create(emitter -> {
+            boolean dispatched = watchLane.dispatch(() -> {
+                try {
+                    emitter.onSuccess(task.call());
+                } catch (Exception e) {
+                    emitter.onError(e);
+                }
+            });
+            if (!dispatched) {
+                emitter.onError(new IllegalStateException("Sync map caches couldn't be initialized."));
+            }
+        });
+    }
+
+    /**
+     * Saves the latest state every now and then (only if it has changed). Saving runs on the watch lane, i.e. out of the
+     * event loop and never concurrently with applying a state.
+     */
+    private void scheduleSnapshots() {
+        if (Objects.isNull(snapshot)) {
+            return;
+        }
+        snapshotTimerId = rxVertx.setPeriodic(snapshotIntervalMs, timerId -> watchLane.dispatch(() -> {
+            if (!Arrays.equals(lastIndexes, savedIndexes)) {
+                Buffer[] states = new Buffer[lastStates.length()];
+                Arrays.setAll(states, lastStates::get);
+                snapshot.save(lastIndexes, states);
+                savedIndexes = lastIndexes.clone();
+            }
+        }));
+    }
+
+    /**
+     * Watch registration. Watch has to be registered in order to keep the internal caches consistent and in sync with central
+     * Consul KV store. Watch listens to events that are coming from Consul KV store and updates the internal caches appropriately.
+     *
+     * @param index consul index of the state the caches of the bucket have been warmed up with.
+     */
+    private void registerWatcher(int bucket, long index) {
+        watches[bucket]
+                .setHandler(promise -> {
+                    if (promise.succeeded()) {
+                        KvPrefixWatch.Result nextState = promise.result();
+                        watchLane.dispatch(() -> applyChanges(bucket, nextState.body(), nextState.index()));
+                    } else {
+                        log.error("Failed to register a watch of bucket: '{}'. Details: '{}'", bucket, promise.cause().getMessage());
+                    }
+                })
+                .start(index);
+    }
+
+    /**
+     * Streams the state of a bucket into the maps. Consul returns the keys sorted, i.e. the entries of a map come one after
+     * another -> the map is looked up once per run of its entries rather than once per entry.
+     * Always runs on the watch lane.
+     */
+    private void applyChanges(int bucket, Buffer state, long index) {
+        maps.values().forEach(map -> map.beginApply(bucket));
+        ConsulSyncMap[] current = new ConsulSyncMap[1];
+        try {
+            KvListDecoder.decode(state, layout.prefix(bucket).length(), (key, value, modifyIndex, session) -> {
+                ConsulSyncMap map = current[0];
+                if (Objects.isNull(map) || !map.owns(key)) {
+                    int separator = key.indexOf('/');
+                    if (separator <= 0) {
+                        return;
+                    }
+                    map = maps.get(key.substring(0, separator));
+                    if (Objects.isNull(map)) {
+                        // nobody uses the map on this node (yet) -> it gets seeded from the last state once it is created.
+                        return;
+                    }
+                    current[0] = map;
+                }
+                map.applyEntry(key, value, modifyIndex);
+            });
+        } catch (IOException e) {
+            // nothing has been published nor recorded -> the next state re-applies every key this one has touched.
+            log.error("Can't decode sync map state of bucket: '{}'. Details: '{}'", bucket, e.getMessage());
+            return;
+        }
+        lastStates.set(bucket, state);
+        lastIndexes[bucket] = index;
+        maps.values().forEach(ConsulSyncMap::endApply);
+    }
+
+    /**
+     * Applies the states that have replaced the ones the map has been seeded from before it has become visible to the
+     * watch lane. Always runs on the watch lane.
+     */
+    private void catchUp(ConsulSyncMap map, Buffer[] seededStates) {
+        for (int bucket = 0; bucket < seededStates.length; bucket++) {
+            Buffer state = lastStates.get(bucket);
+            if (state != seededStates[bucket]) {
+                seed(map, bucket, state);
+            }
+        }
+    }
+
+    /**
+     * Populates the map from a state of the bucket that has been decoded successfully already.
+     */
+    private void seed(ConsulSyncMap map, int bucket, Buffer state) {
+        map.beginApply(bucket);
+        try {
+            KvListDecoder.decode(state, layout.prefix(bucket).length(), (key, value, modifyIndex, session) -> {
+                if (map.owns(key)) {
+                    map.applyEntry(key, value, modifyIndex);
+                }
+            });
+        } catch (IOException e) {
+            // can't really happen. The keys staged so far aren't recorded as applied -> the next state of the bucket applies them.
+            log.error("Can't seed sync map: '{}'. Details: '{}'", map.name(), e.getMessage());
+            return;
+        }
+        map.endApply();
+    }
+
+    /**
+     * Stops the watches and the timers the registry owns. Maps can't be used after the registry has been closed.
+     */
+    public void close() {
+        log.trace("Closing sync map registry...");
+        for (KvPrefixWatch watch : watches) {
+            watch.stop();
+        }
+        rxVertx.cancelTimer(snapshotTimerId);
+        rxVertx.cancelTimer(printCacheTimerId);
+    }
+
+    // just a dummy helper method [it's gonna get removed] to print out every 5 sec the data that resides within the internal caches.
+    private void printCache() {
+        printCacheTimerId = rxVertx.setPeriodic(5000, handler -> maps.forEach((mapName, map) ->
+                log.trace("Internal cache of '{}': '{}'", mapName, Json.encodePrettily(map))));
+    }
+}
@@ -0,0 +1,177 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.consul.ConsulClientOptions;
+import io.vertx.spi.cluster.consul.ConsulClusterManagerOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Client of Consul transaction endpoint: {@code PUT /v1/txn}. Executes up to {@link #MAX_OPS} KV operations atomically,
+ * in a single round trip.
+ * <p>
+ * Note: vert.x consul client doesn't support transactions -> plain vert.x http client is used here.
+ */
+public final class ConsulTxn {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsulTxn.class);
+    // consul limit of operations per transaction.
+    public static final int MAX_OPS = 64;
+
+    private final HttpClient httpClient;
+    private final String host;
+    private final int port;
+    private final String aclToken;
+    private final String uri;
+    private final long timeoutMs;
+
+    public ConsulTxn(Vertx vertx, ConsulClientOptions options) {
+        this(vertx, options, ConsulClusterManagerOptions.DEFAULT_TXN_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs a transaction fails once it has gone that long without any response data.
+     */
+    public ConsulTxn(Vertx vertx, ConsulClientOptions options, long timeoutMs) {
+        Objects.requireNonNull(vertx);
+        Objects.requireNonNull(options);
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("Transaction timeout must be positive.");
+        }
+        this.timeoutMs = timeoutMs;
+        this.httpClient = vertx.createHttpClient(new HttpClientOptions(options));
+        this.host = options.getDefaultHost();
+        this.port = options.getDefaultPort();
+        this.aclToken = options.getAclToken();
+        this.uri = Objects.isNull(options.getDc()) ? "/v1/txn" : "/v1/txn?dc=" + options.getDc();
+    }
+
+    /**
+     * Executes the given operations atomically.
+     *
+     * @param ops operations built by {@link #set(String, String)}, {@link #delete(String)} etc.
+     * @return results of the operations (i.e. KV entries along with their modify indexes for set operations). Fails on
+     * a timeout as well as on a malformed response.
+     */
+    public Single<JsonArray> execute(JsonArray ops) {
+        if (ops.size() > MAX_OPS) {
+            return Single.error(new IllegalArgumentException("Transaction can't have more than " + MAX_OPS + " operations."));
+        }
+        return Single.create(emitter -> {
+            HttpClientRequest request = httpClient.request(HttpMethod.PUT, port, host, uri, response -> response.exceptionHandler(emitter::onError).bodyHandler(body -> {
+                if (response.statusCode() == 200) {
+                    JsonArray results;
+                    try {
+                        results = body.toJsonObject().getJsonArray("Results");
+                    } catch (RuntimeException e) {
+                        log.trace("Transaction response is malformed: '{}'", body.toString());
+                        emitter.onError(new IllegalStateException("Consul transaction response is malformed. Details: " + e.getMessage(), e));
+                        return;
+                    }
+                    emitter.onSuccess(Objects.isNull(results) ? new JsonArray() : results);
+                } else if (response.statusCode() == 409) {
+                    log.trace("Transaction has been rolled back. Details: '{}'", body.toString());
+                    emitter.onError(new RolledBackException(body.toString()));
+                } else {
+                    log.trace("Transaction has failed. Status: '{}'. Details: '{}'", response.statusCode(), body.toString());
+                    emitter.onError(new IllegalStateException("Consul transaction has failed with status: " + response.statusCode() + ". Details: " + body.toString()));
+                }
+            }));
+            // a timeout is reported to the exception handler as well.
+            request.setTimeout(timeoutMs);
+            request.exceptionHandler(emitter::onError);
+            if (Objects.nonNull(aclToken)) {
+                request.putHeader("X-Consul-Token", aclToken);
+            }
+            request.end(ops.toBuffer());
+        });
+    }
+
+    public void close() {
+        httpClient.close();
+    }
+
+    public static JsonObject set(String key, String value) {
+        return set(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param value raw value (i.e. encoded by {@link ValueCodec}).
+     */
+    public static JsonObject set(String key, byte[] value) {
+        JsonObject op = kvOp("set", key);
+        op.getJsonObject("KV").put("Value", Base64.getEncoder().encodeToString(value));
+        return op;
+    }
+
+    /**
+     * Sets the value only if the key hasn't been modified since the given modify index (0 -> only if the key doesn't
+     * exist), otherwise the whole transaction is rolled back.
+     */
+    public static JsonObject cas(String key, byte[] value, long modifyIndex) {
+        JsonObject op = set(key, value);
+        op.getJsonObject("KV")
+                .put("Verb", "cas")
+                .put("Index", modifyIndex);
+        return op;
+    }
+
+    /**
+     * Sets the value and acquires the key by the given session (see {@link ConsulSession}), i.e. the key gets deleted
+     * once the session is invalidated. Fails the whole transaction if the key is held by another session.
+     *
+     * @param value raw value (i.e. encoded by {@link ValueCodec}).
+     */
+    public static JsonObject lock(String key, byte[] value, String sessionId) {
+        JsonObject op = kvOp("lock", key);
+        op.getJsonObject("KV")
+                .put("Value", Base64.getEncoder().encodeToString(value))
+                .put("Session", sessionId);
+        return op;
+    }
+
+    public static JsonObject delete(String key) {
+        return kvOp("delete", key);
+    }
+
+    /**
+     * Deletes the key only if it hasn't been modified since the given modify index, otherwise the whole transaction is
+     * rolled back.
+     */
+    public static JsonObject deleteCas(String key, long modifyIndex) {
+        JsonObject op = kvOp("delete-cas", key);
+        op.getJsonObject("KV").put("Index", modifyIndex);
+        return op;
+    }
+
+    public static JsonObject deleteTree(String prefix) {
+        return kvOp("delete-tree", prefix);
+    }
+
+    private static JsonObject kvOp(String verb, String key) {
+        JsonObject kvOp = new JsonObject().put("Verb", verb).put("Key", key);
+        return new JsonObject().put("KV", kvOp);
+    }
+
+    /**
+     * Transaction has been rejected by Consul as a whole (i.e. a check-and-set has failed, a lock is held by another
+     * session or the session doesn't exist any more), none of its operations has been applied.
+     */
+    public static final class RolledBackException extends IllegalStateException {
+
+        RolledBackException(String details) {
+            super("Consul transaction has been rolled back. Details: " + details);
+        }
+    }
+}
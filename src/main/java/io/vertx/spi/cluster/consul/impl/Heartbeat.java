@@ -0,0 +1,69 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.consul.ConsulClient;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the node's TTL health check passing. A single timer is used: next heartbeat gets scheduled (with a random jitter)
+ * only once the previous one has completed, so heartbeats never pile up if Consul is slow.
+ */
+public final class Heartbeat {
+
+    private static final Logger log = LoggerFactory.getLogger(Heartbeat.class);
+
+    private final Vertx rxVertx;
+    private final ConsulClient consulClient;
+    private final String checkId;
+    private final long intervalMs;
+    private final long jitterMs;
+    private final ConsulClusterMetrics metrics;
+
+    private volatile boolean running;
+    private volatile long timerId = -1;
+
+    public Heartbeat(Vertx rxVertx, ConsulClient consulClient, String checkId, long intervalMs, long jitterMs, ConsulClusterMetrics metrics) {
+        this.rxVertx = Objects.requireNonNull(rxVertx);
+        this.consulClient = Objects.requireNonNull(consulClient);
+        this.checkId = Objects.requireNonNull(checkId);
+        this.intervalMs = intervalMs;
+        this.jitterMs = jitterMs;
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    public void start() {
+        log.trace("Starting heartbeats of check: '{}' every '{}' ms (+/- '{}' ms).", checkId, intervalMs, jitterMs);
+        running = true;
+        schedule();
+    }
+
+    public void stop() {
+        running = false;
+        rxVertx.cancelTimer(timerId);
+    }
+
+    private void schedule() {
+        if (!running) {
+            return;
+        }
+        long jitter = jitterMs == 0 ? 0 : ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1);
+        timerId = rxVertx.setTimer(Math.max(1, intervalMs + jitter), id -> beat());
+    }
+
+    private void beat() {
+        consulClient.rxPassCheck(checkId).subscribe(
+                () -> {
+                    metrics.heartbeatSent();
+                    schedule();
+                },
+                throwable -> {
+                    metrics.heartbeatFailed();
+                    log.warn("Heartbeat of check: '{}' has failed. Details: '{}'", checkId, throwable.getMessage());
+                    schedule();
+                });
+    }
+}
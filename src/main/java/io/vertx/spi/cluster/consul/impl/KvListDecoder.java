@@ -0,0 +1,102 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+
+/**
+ * Streaming decoder of Consul KV list responses ({@code GET /v1/kv/<prefix>?recurse}).
+ * <p>
+ * Entries are handed over one by one while the response is being parsed, i.e. no json tree, no
+ * {@link io.vertx.ext.consul.KeyValue}s and no intermediate base64 strings are built: the key prefix is stripped by offset
+ * right from the parser's buffer, the value is base64-decoded by the parser straight into bytes, the session id is read
+ * as is. All the other fields are skipped.
+ */
+public final class KvListDecoder {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    /**
+     * Receives decoded entries.
+     */
+    @FunctionalInterface
+    public interface EntryHandler {
+        /**
+         * @param key         key with the prefix stripped.
+         * @param value       raw (base64-decoded) value, never null.
+         * @param modifyIndex modify index of the entry.
+         * @param session     id of the session holding the entry (see {@link ConsulSession}), null if there is none.
+         */
+        void handle(String key, byte[] value, long modifyIndex, String session);
+    }
+
+    private KvListDecoder() {
+    }
+
+    /**
+     * Decodes the given response. Entries whose keys are not longer than the prefix (i.e. the prefix "folder" itself) are
+     * skipped.
+     *
+     * @param body         response body, empty buffer stands for no entries.
+     * @param prefixLength length of the key prefix to strip.
+     * @return number of the entries that have been handed over.
+     * @throws IOException if the response is malformed.
+     */
+    public static int decode(Buffer body, int prefixLength, EntryHandler handler) throws IOException {
+        if (body.length() == 0) {
+            return 0;
+        }
+        int count = 0;
+        try (JsonParser parser = jsonFactory.createParser(new ByteBufInputStream(body.getByteBuf()))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Json array of KV entries is expected.");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String key = null;
+                byte[] value = EMPTY_VALUE;
+                long modifyIndex = 0;
+                String session = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    // field names are interned by the parser -> no allocation here.
+                    String field = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    switch (field) {
+                        case "Key":
+                            key = strip(parser, prefixLength);
+                            break;
+                        case "Value":
+                            value = token == JsonToken.VALUE_NULL ? EMPTY_VALUE : parser.getBinaryValue();
+                            break;
+                        case "ModifyIndex":
+                            modifyIndex = parser.getLongValue();
+                            break;
+                        case "Session":
+                            session = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+                if (key != null) {
+                    handler.handle(key, value, modifyIndex, session);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String strip(JsonParser parser, int prefixLength) throws IOException {
+        int length = parser.getTextLength();
+        if (length <= prefixLength) {
+            return null;
+        }
+        return new String(parser.getTextCharacters(), parser.getTextOffset() + prefixLength, length - prefixLength);
+    }
+}
@@ -0,0 +1,205 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.consul.ConsulClientOptions;
+import io.vertx.spi.cluster.consul.ReadConsistency;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Objects;
+
+/**
+ * Blocking query of a Consul KV prefix: {@code GET /v1/kv/<prefix>?recurse&index=<index>&wait=<wait>}.
+ * <p>
+ * As opposed to {@link io.vertx.ext.consul.Watch#keyPrefix(String, io.vertx.core.Vertx)} the response body is handed over
+ * as is (i.e. without being turned into json objects and {@link io.vertx.ext.consul.KeyValue}s) so that it can be streamed
+ * straight into caches by {@link KvListDecoder}.
+ * <p>
+ * Consistency: reads are done in the given {@link ReadConsistency} mode. A {@link ReadConsistency#STALE} response that is
+ * staler than the max staleness (see {@code X-Consul-LastContact}) is rejected and the read is retried in the default mode.
+ */
+public final class KvPrefixWatch {
+
+    private static final Logger log = LoggerFactory.getLogger(KvPrefixWatch.class);
+    private static final String WAIT = "5m";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final Vertx vertx;
+    private final HttpClient httpClient;
+    private final String host;
+    private final int port;
+    private final String aclToken;
+    private final String uri;
+    private final ReadConsistency consistency;
+    // 0 -> stale reads are not bounded.
+    private final long maxStalenessMs;
+    private final ConsulClusterMetrics metrics;
+
+    private Handler<AsyncResult<Result>> handler;
+    private volatile boolean running;
+
+    /**
+     * @param consistency    consistency mode of the blocking queries.
+     * @param maxStalenessMs max staleness of {@link ReadConsistency#STALE} reads, 0 disables the bound.
+     */
+    public KvPrefixWatch(Vertx vertx, ConsulClientOptions options, String prefix, ReadConsistency consistency,
+                         long maxStalenessMs, ConsulClusterMetrics metrics) {
+        this.vertx = Objects.requireNonNull(vertx);
+        Objects.requireNonNull(options);
+        this.httpClient = vertx.createHttpClient(new HttpClientOptions(options));
+        this.host = options.getDefaultHost();
+        this.port = options.getDefaultPort();
+        this.aclToken = options.getAclToken();
+        StringBuilder uriBuilder = new StringBuilder("/v1/kv/").append(encode(Objects.requireNonNull(prefix))).append("?recurse");
+        if (Objects.nonNull(options.getDc())) {
+            uriBuilder.append("&dc=").append(encode(options.getDc()));
+        }
+        this.uri = uriBuilder.toString();
+        this.consistency = Objects.requireNonNull(consistency);
+        this.maxStalenessMs = maxStalenessMs;
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Sets the handler that gets called every time the state of the prefix changes.
+     */
+    public KvPrefixWatch setHandler(Handler<AsyncResult<Result>> handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    /**
+     * Fetches the current state of the prefix in the given consistency mode.
+     */
+    public Single<Result> fetch(ReadConsistency fetchConsistency) {
+        return query(0, fetchConsistency);
+    }
+
+    /**
+     * Starts the blocking query loop.
+     *
+     * @param index consul index to start from, i.e. the index of the last result the caller has already seen.
+     */
+    public KvPrefixWatch start(long index) {
+        Objects.requireNonNull(handler, "Handler must be set before the watch gets started.");
+        running = true;
+        poll(index);
+        return this;
+    }
+
+    public void stop() {
+        running = false;
+        httpClient.close();
+    }
+
+    private void poll(long index) {
+        if (!running) {
+            return;
+        }
+        query(index, consistency).subscribe(
+                result -> {
+                    if (!running) {
+                        return;
+                    }
+                    if (result.index() != index) {
+                        handler.handle(Future.succeededFuture(result));
+                    }
+                    // consul may reset the index (i.e. after a snapshot restore) -> start over in this case.
+                    poll(result.index() < index ? 0 : result.index());
+                },
+                throwable -> {
+                    if (!running) {
+                        return;
+                    }
+                    log.warn("Blocking query: '{}' has failed. Retrying in '{}' ms. Details: '{}'", uri, RETRY_DELAY_MS, throwable.getMessage());
+                    handler.handle(Future.failedFuture(throwable));
+                    vertx.setTimer(RETRY_DELAY_MS, timerId -> poll(index));
+                });
+    }
+
+    private Single<Result> query(long index, ReadConsistency queryConsistency) {
+        Single<Result> result = request(index, queryConsistency);
+        if (queryConsistency != ReadConsistency.STALE) {
+            return result;
+        }
+        return result.flatMap(staleResult -> {
+            metrics.staleRead();
+            if (maxStalenessMs > 0 && staleResult.lastContactMs > maxStalenessMs) {
+                metrics.staleReadRejected();
+                log.trace("Stale read of: '{}' is '{}' ms old -> retried in the default mode.", uri, staleResult.lastContactMs);
+                return request(index, ReadConsistency.DEFAULT);
+            }
+            return Single.just(staleResult);
+        });
+    }
+
+    private Single<Result> request(long index, ReadConsistency queryConsistency) {
+        String requestUri = uri + "&index=" + index + "&wait=" + WAIT
+                + (Objects.isNull(queryConsistency.queryParameter()) ? "" : "&" + queryConsistency.queryParameter());
+        return Single.create(emitter -> {
+            HttpClientRequest request = httpClient.request(HttpMethod.GET, port, host, requestUri, response -> response.bodyHandler(body -> {
+                // 404 -> there are no keys under the prefix.
+                if (response.statusCode() == 200 || response.statusCode() == 404) {
+                    String indexHeader = response.getHeader("X-Consul-Index");
+                    long nextIndex = Objects.isNull(indexHeader) ? 0 : Long.parseLong(indexHeader);
+                    String lastContactHeader = response.getHeader("X-Consul-LastContact");
+                    long lastContactMs = Objects.isNull(lastContactHeader) ? 0 : Long.parseLong(lastContactHeader);
+                    emitter.onSuccess(new Result(nextIndex, response.statusCode() == 200 ? body : Buffer.buffer(), lastContactMs));
+                } else {
+                    emitter.onError(new IllegalStateException("Blocking query has failed with status: " + response.statusCode() + ". Details: " + body.toString()));
+                }
+            }));
+            request.exceptionHandler(emitter::onError);
+            if (Objects.nonNull(aclToken)) {
+                request.putHeader("X-Consul-Token", aclToken);
+            }
+            request.end();
+        });
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Raw state of the prefix along with the consul index it has been read at.
+     */
+    public static final class Result {
+        private final long index;
+        private final Buffer body;
+        // how long ago (ms) the serving consul server has been in contact with the leader.
+        private final long lastContactMs;
+
+        Result(long index, Buffer body, long lastContactMs) {
+            this.index = index;
+            this.body = body;
+            this.lastContactMs = lastContactMs;
+        }
+
+        public long index() {
+            return index;
+        }
+
+        /**
+         * @return json array of KV entries as returned by consul, empty buffer if there are no keys under the prefix.
+         */
+        public Buffer body() {
+            return body;
+        }
+    }
+}
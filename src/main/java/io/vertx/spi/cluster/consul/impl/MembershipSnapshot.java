@@ -0,0 +1,59 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, versioned view of the cluster. A new snapshot is built for every membership change and swapped in atomically,
+ * so that readers always get a consistent list of nodes without any locking or copying. Node ids are sorted, i.e. the
+ * snapshot of the same version is identical on all the nodes. Metadata of every node is kept along with its id.
+ */
+public final class MembershipSnapshot {
+
+    static final MembershipSnapshot EMPTY = new MembershipSnapshot(0, Collections.emptyMap());
+
+    private final long version;
+    private final Map<String, NodeInfo> nodeInfos;
+    private final List<String> nodes;
+
+    MembershipSnapshot(long version, Map<String, NodeInfo> nodeInfos) {
+        this.version = version;
+        this.nodeInfos = Collections.unmodifiableMap(new HashMap<>(nodeInfos));
+        List<String> sortedNodes = new ArrayList<>(nodeInfos.keySet());
+        Collections.sort(sortedNodes);
+        this.nodes = Collections.unmodifiableList(sortedNodes);
+    }
+
+    /**
+     * @return version of the snapshot, i.e. consul index at which the membership change has been observed.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable list of node ids.
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean contains(String nodeId) {
+        return nodeInfos.containsKey(nodeId);
+    }
+
+    /**
+     * @return metadata of the given node, null if the node isn't a member.
+     */
+    public NodeInfo nodeInfo(String nodeId) {
+        return nodeInfos.get(nodeId);
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + " " + nodes;
+    }
+}
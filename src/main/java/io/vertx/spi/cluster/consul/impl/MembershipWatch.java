@@ -0,0 +1,123 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.consul.BlockingQueryOptions;
+import io.vertx.ext.consul.ServiceEntryList;
+import io.vertx.ext.consul.ServiceQueryOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.consul.ConsulClient;
+
+import java.util.Objects;
+
+/**
+ * Membership source based on a blocking query of healthy, tagged instances of a single service:
+ * {@code /v1/health/service/<service>?passing&tag=<tag>&index=<index>}.
+ * <p>
+ * As opposed to {@link io.vertx.ext.consul.Watch#services(io.vertx.core.Vertx)} only healthy cluster members cross the
+ * wire, and changes of unrelated services in the datacenter don't wake the watch up.
+ */
+public final class MembershipWatch {
+
+    private static final Logger log = LoggerFactory.getLogger(MembershipWatch.class);
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final Vertx rxVertx;
+    private final ConsulClient consulClient;
+    private final String serviceName;
+    private final String tag;
+    private final String wait;
+    private final long coalescingWindowMs;
+
+    private Handler<AsyncResult<ServiceEntryList>> handler;
+    private volatile boolean running;
+
+    /**
+     * @param wait max duration of a single blocking query (i.e. "10s"). The handler gets called at least that often,
+     *             even if nothing has changed.
+     * @param coalescingWindowMs once a change is noticed, the watch waits that long and re-reads the state, so that a burst
+     *                           of changes is delivered as a single result. 0 disables coalescing.
+     */
+    public MembershipWatch(Vertx rxVertx, ConsulClient consulClient, String serviceName, String tag, String wait, long coalescingWindowMs) {
+        this.rxVertx = Objects.requireNonNull(rxVertx);
+        this.consulClient = Objects.requireNonNull(consulClient);
+        this.serviceName = Objects.requireNonNull(serviceName);
+        this.tag = Objects.requireNonNull(tag);
+        this.wait = Objects.requireNonNull(wait);
+        this.coalescingWindowMs = coalescingWindowMs;
+    }
+
+    /**
+     * Sets the handler that gets called with every result of the blocking query: once the set of healthy cluster members
+     * changes or the query times out (which confirms that the members are still alive).
+     */
+    public MembershipWatch setHandler(Handler<AsyncResult<ServiceEntryList>> handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    /**
+     * Fetches the current healthy cluster members.
+     */
+    public Single<ServiceEntryList> fetch() {
+        return query(0);
+    }
+
+    /**
+     * Starts the blocking query loop.
+     *
+     * @param index consul index to start from, i.e. the index of the last result the caller has already seen.
+     */
+    public MembershipWatch start(long index) {
+        Objects.requireNonNull(handler, "Handler must be set before the watch gets started.");
+        running = true;
+        poll(index, false);
+        return this;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void poll(long index, boolean coalesced) {
+        if (!running) {
+            return;
+        }
+        query(index).subscribe(
+                serviceEntryList -> {
+                    if (!running) {
+                        return;
+                    }
+                    long nextIndex = serviceEntryList.getIndex();
+                    if (coalescingWindowMs > 0 && nextIndex != index && !coalesced) {
+                        // first change of a (potential) burst -> let the rest of the burst happen and re-read the state,
+                        // the query returns right away since the index has already changed.
+                        rxVertx.setTimer(coalescingWindowMs, timerId -> poll(index, true));
+                        return;
+                    }
+                    handler.handle(Future.succeededFuture(serviceEntryList));
+                    // consul may reset the index (i.e. after a snapshot restore) -> start over in this case.
+                    poll(nextIndex < index ? 0 : nextIndex, false);
+                },
+                throwable -> {
+                    if (!running) {
+                        return;
+                    }
+                    log.warn("Blocking query for service: '{}' has failed. Retrying in '{}' ms. Details: '{}'",
+                            serviceName, RETRY_DELAY_MS, throwable.getMessage());
+                    handler.handle(Future.failedFuture(throwable));
+                    rxVertx.setTimer(RETRY_DELAY_MS, timerId -> poll(index, coalesced));
+                });
+    }
+
+    private Single<ServiceEntryList> query(long index) {
+        ServiceQueryOptions queryOptions = new ServiceQueryOptions()
+                .setTag(tag)
+                .setBlockingOptions(new BlockingQueryOptions().setIndex(index).setWait(wait));
+        return consulClient.rxHealthServiceNodesWithOptions(serviceName, true, queryOptions);
+    }
+}
@@ -0,0 +1,160 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.consul.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Metadata of a cluster node. It is published along with the node's service registration, so that the other nodes get it
+ * from the very same membership query and can resolve a node from memory.
+ * <p>
+ * Note: vert.x consul client doesn't support service meta yet -> metadata is published as tags of form
+ * {@code vertx.meta.<key>=<value>}.
+ */
+public final class NodeInfo {
+
+    private static final String TAG_PREFIX = "vertx.meta.";
+    private static final String HOST = "host";
+    private static final String PORT = "port";
+    private static final String HA_GROUP = "haGroup";
+    private static final String EPOCH = "epoch";
+
+    private final String nodeId;
+    private final String host;
+    private final int port;
+    private final String haGroup;
+    private final long epoch;
+
+    public NodeInfo(String nodeId, String host, int port, String haGroup, long epoch) {
+        this.nodeId = Objects.requireNonNull(nodeId);
+        this.host = host;
+        this.port = port;
+        this.haGroup = haGroup;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Builds node info out of the service returned by consul. Missing metadata is left empty.
+     */
+    public static NodeInfo fromService(Service service) {
+        String host = null;
+        int port = -1;
+        String haGroup = null;
+        long epoch = 0;
+        if (Objects.nonNull(service.getTags())) {
+            for (String tag : service.getTags()) {
+                int separator = tag.indexOf('=');
+                if (!tag.startsWith(TAG_PREFIX) || separator < 0) {
+                    continue;
+                }
+                String key = tag.substring(TAG_PREFIX.length(), separator);
+                String value = tag.substring(separator + 1);
+                try {
+                    switch (key) {
+                        case HOST:
+                            host = value;
+                            break;
+                        case PORT:
+                            port = Integer.parseInt(value);
+                            break;
+                        case HA_GROUP:
+                            haGroup = value;
+                            break;
+                        case EPOCH:
+                            epoch = Long.parseLong(value);
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (NumberFormatException e) {
+                    // metadata published by an incompatible node -> ignored.
+                }
+            }
+        }
+        return new NodeInfo(service.getId(), host, port, haGroup, epoch);
+    }
+
+    /**
+     * @return tags the metadata is published as.
+     */
+    public List<String> toTags() {
+        List<String> tags = new ArrayList<>();
+        if (Objects.nonNull(host)) {
+            tags.add(TAG_PREFIX + HOST + "=" + host);
+        }
+        if (port >= 0) {
+            tags.add(TAG_PREFIX + PORT + "=" + port);
+        }
+        if (Objects.nonNull(haGroup)) {
+            tags.add(TAG_PREFIX + HA_GROUP + "=" + haGroup);
+        }
+        tags.add(TAG_PREFIX + EPOCH + "=" + epoch);
+        return tags;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return event bus host, null if unknown.
+     */
+    public String host() {
+        return host;
+    }
+
+    /**
+     * @return event bus port, -1 if unknown.
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return HA group, null if unknown.
+     */
+    public String haGroup() {
+        return haGroup;
+    }
+
+    /**
+     * @return the time (ms since epoch) the node has been started at.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("nodeId", nodeId)
+                .put("host", host)
+                .put("port", port)
+                .put("haGroup", haGroup)
+                .put("epoch", epoch);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NodeInfo nodeInfo = (NodeInfo) o;
+        return port == nodeInfo.port &&
+                epoch == nodeInfo.epoch &&
+                nodeId.equals(nodeInfo.nodeId) &&
+                Objects.equals(host, nodeInfo.host) &&
+                Objects.equals(haGroup, nodeInfo.haGroup);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodeId, host, port, haGroup, epoch);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().encode();
+    }
+}
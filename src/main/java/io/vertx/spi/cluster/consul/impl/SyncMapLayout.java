@@ -0,0 +1,74 @@
+package io.vertx.spi.cluster.consul.impl;
+
+/**
+ * Layout of the sync maps within Consul KV store.
+ * <ul>
+ * <li>flat (single bucket): {@code __vertx.syncMaps/<map name>/<key>}, all the maps are watched by a single blocking query.</li>
+ * <li>sharded (N buckets): {@code __vertx.syncMaps.buckets/<bucket>/<map name>/<key>}, every bucket is watched by its own
+ * blocking query, i.e. a single change costs 1/N of the data to re-download.</li>
+ * </ul>
+ * Bucket of an entry is derived from its key relative to the root ({@code <map name>/<key>}), so the entries of a map are
+ * spread over all the buckets. All the nodes of a cluster must use the same number of buckets.
+ */
+public final class SyncMapLayout {
+
+    public static final String ROOT_PREFIX = "__vertx.syncMaps";
+    public static final String BUCKETS_ROOT_PREFIX = "__vertx.syncMaps.buckets";
+    public static final int MAX_BUCKETS = 256;
+
+    private final int bucketCount;
+    private final String[] prefixes;
+
+    public SyncMapLayout(int bucketCount) {
+        if (bucketCount < 1 || bucketCount > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Number of buckets must be within [1, " + MAX_BUCKETS + "].");
+        }
+        this.bucketCount = bucketCount;
+        this.prefixes = new String[bucketCount];
+        if (bucketCount == 1) {
+            prefixes[0] = flatPrefix();
+        } else {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                prefixes[bucket] = BUCKETS_ROOT_PREFIX + "/" + bucket + "/";
+            }
+        }
+    }
+
+    public int bucketCount() {
+        return bucketCount;
+    }
+
+    public boolean sharded() {
+        return bucketCount > 1;
+    }
+
+    /**
+     * @param relativeKey key relative to the root, i.e. {@code <map name>/<key>}.
+     */
+    public int bucketOf(String relativeKey) {
+        // String#hashCode is specified -> the same bucket on every node.
+        return bucketCount == 1 ? 0 : (relativeKey.hashCode() & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    /**
+     * @return KV prefix (including the trailing '/') of the given bucket.
+     */
+    public String prefix(int bucket) {
+        return prefixes[bucket];
+    }
+
+    /**
+     * @param relativeKey key relative to the root, i.e. {@code <map name>/<key>}.
+     * @return consul KV store key the entry is stored under.
+     */
+    public String keyPath(String relativeKey) {
+        return prefixes[bucketOf(relativeKey)] + relativeKey;
+    }
+
+    /**
+     * @return KV prefix (including the trailing '/') of the flat layout.
+     */
+    public static String flatPrefix() {
+        return ROOT_PREFIX + "/";
+    }
+}
@@ -0,0 +1,165 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Local, memory-mapped snapshot of the sync maps' state: the raw consul KV list response of every bucket (see
+ * {@link SyncMapLayout}) along with the consul index it has been read at. A restarted node loads it, serves reads right
+ * away and catches up with Consul by blocking queries from the saved indexes (instead of downloading all the maps before
+ * it can join).
+ * <p>
+ * Layout: {@code magic (int) | version (int) | bucket count (int)} followed by a section per bucket:
+ * {@code consul index (long) | body length (int) | body crc32 (long) | body}.
+ * The snapshot is written to a temporary file first and then moved over the previous one, i.e. a crash never leaves a
+ * partially written snapshot behind. A snapshot that can't be read (missing, corrupted, incompatible, taken with a
+ * different number of buckets) is simply ignored.
+ * <p>
+ * Note: both {@link #load(int)} and {@link #save(long[], Buffer[])} do blocking file IO -> never call them within the
+ * event loop.
+ */
+public final class SyncMapSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncMapSnapshot.class);
+    private static final int MAGIC = 0x56435353;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 4 + 4 + 4;
+    private static final int SECTION_HEADER_LENGTH = 8 + 4 + 8;
+
+    private final Path file;
+    private final Path tempFile;
+
+    public SyncMapSnapshot(Path file) {
+        this.file = Objects.requireNonNull(file).toAbsolutePath();
+        this.tempFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    }
+
+    /**
+     * @param bucketCount number of buckets the snapshot is expected to have.
+     * @return the saved state of every bucket, null if there is no usable snapshot.
+     */
+    public Entry[] load(int bucketCount) {
+        if (!Files.isRegularFile(file)) {
+            log.trace("There is no sync map snapshot: '{}'.", file);
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH) {
+                throw new IOException("Snapshot is truncated.");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                throw new IOException("Snapshot is of unknown format.");
+            }
+            if (mapped.getInt() != bucketCount) {
+                throw new IOException("Snapshot has been taken with a different number of buckets.");
+            }
+            Entry[] entries = new Entry[bucketCount];
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                if (mapped.remaining() < SECTION_HEADER_LENGTH) {
+                    throw new IOException("Snapshot is truncated.");
+                }
+                long index = mapped.getLong();
+                int length = mapped.getInt();
+                long checksum = mapped.getLong();
+                if (length < 0 || length > mapped.remaining()) {
+                    throw new IOException("Snapshot is truncated.");
+                }
+                ByteBuffer body = mapped.slice();
+                body.limit(length);
+                mapped.position(mapped.position() + length);
+                if (checksum != checksum(body.duplicate())) {
+                    throw new IOException("Snapshot checksum doesn't match.");
+                }
+                // mapping stays valid after the channel has been closed -> the body is decoded straight from the mapped file.
+                entries[bucket] = new Entry(index, Buffer.buffer(Unpooled.wrappedBuffer(body)));
+            }
+            log.trace("Sync map snapshot: '{}' of '{}' bytes has been loaded.", file, channel.size());
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't load sync map snapshot: '{}' -> ignored. Details: '{}'", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the given state.
+     *
+     * @param indexes consul index every bucket's state has been read at.
+     * @param bodies  raw consul KV list response of every bucket.
+     */
+    public void save(long[] indexes, Buffer[] bodies) {
+        ByteBuffer[] bytes = new ByteBuffer[bodies.length];
+        long size = HEADER_LENGTH;
+        for (int bucket = 0; bucket < bodies.length; bucket++) {
+            bytes[bucket] = bodies[bucket].getByteBuf().nioBuffer();
+            size += SECTION_HEADER_LENGTH + bytes[bucket].remaining();
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                mapped.putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(bodies.length);
+                for (int bucket = 0; bucket < bodies.length; bucket++) {
+                    mapped.putLong(indexes[bucket])
+                            .putInt(bytes[bucket].remaining())
+                            .putLong(checksum(bytes[bucket].duplicate()))
+                            .put(bytes[bucket]);
+                }
+                mapped.force();
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.trace("Sync map snapshot: '{}' of '{}' bytes has been saved.", file, size);
+        } catch (IOException | RuntimeException e) {
+            log.error("Can't save sync map snapshot: '{}'. Details: '{}'", file, e.getMessage());
+        }
+    }
+
+    private static long checksum(ByteBuffer bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return crc32.getValue();
+    }
+
+    /**
+     * Saved state of a bucket.
+     */
+    public static final class Entry {
+        private final long index;
+        private final Buffer body;
+
+        Entry(long index, Buffer body) {
+            this.index = index;
+            this.body = body;
+        }
+
+        public long index() {
+            return index;
+        }
+
+        public Buffer body() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.reactivex.subjects.SingleSubject;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Write-behind pipeline of KV mutations. Submitted operations are merged into Consul transactions of up to
+ * {@code maxOps} operations. A transaction is sent once there are enough pending operations or once a short flush delay
+ * expires, whatever comes first.
+ * <p>
+ * Ordering: operations are kept in submission order and up to {@code maxInFlight} transactions are in flight at a time,
+ * as long as they touch disjoint keys (a transaction is only sent once no transaction in flight touches any of its keys,
+ * a tree deletion waits for all of them), i.e. mutations of a single key are applied by Consul in the order they have
+ * been submitted.
+ * <p>
+ * Failures: if a transaction fails, every operation of it is failed, logged and counted in {@link #failedCount()}. The
+ * only exception is a rolled back transaction that mixes lock operations with other ones: only the lock operations fail
+ * and the rest is re-sent (see {@link ConsulSession}).
+ */
+public final class TxnBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(TxnBatcher.class);
+
+    public static final int DEFAULT_MAX_OPS = ConsulTxn.MAX_OPS;
+    public static final long DEFAULT_FLUSH_DELAY_MS = 5;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final Vertx vertx;
+    // sends a transaction, i.e. ConsulTxn#execute.
+    private final Function<JsonArray, Single<JsonArray>> txn;
+    private final int maxOps;
+    private final long flushDelayMs;
+    private final int maxInFlight;
+    private final AtomicLong failed = new AtomicLong();
+
+    // guarded by this.
+    private final Deque<PendingOp> pending = new ArrayDeque<>();
+    private int inFlight;
+    // keys touched by the transactions in flight.
+    private final Set<String> inFlightKeys = new HashSet<>();
+    // whether a transaction in flight deletes a tree, i.e. may touch any key.
+    private boolean treeDeletionInFlight;
+    private long timerId = -1;
+    private boolean closed;
+
+    public TxnBatcher(Vertx vertx, ConsulTxn txn) {
+        this(vertx, txn, DEFAULT_MAX_OPS, DEFAULT_FLUSH_DELAY_MS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public TxnBatcher(Vertx vertx, ConsulTxn txn, int maxOps, long flushDelayMs, int maxInFlight) {
+        this(vertx, Objects.requireNonNull(txn)::execute, maxOps, flushDelayMs, maxInFlight);
+    }
+
+    TxnBatcher(Vertx vertx, Function<JsonArray, Single<JsonArray>> txn, int maxOps, long flushDelayMs, int maxInFlight) {
+        if (maxOps < 1 || maxOps > ConsulTxn.MAX_OPS) {
+            throw new IllegalArgumentException("Max number of operations must be within [1, " + ConsulTxn.MAX_OPS + "].");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max number of transactions in flight must be positive.");
+        }
+        this.vertx = Objects.requireNonNull(vertx);
+        this.txn = Objects.requireNonNull(txn);
+        this.maxOps = maxOps;
+        this.flushDelayMs = Math.max(1, flushDelayMs);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Submits the operation right away (not on subscription).
+     *
+     * @param op operation built by {@link ConsulTxn}.
+     * @return KV entry the operation has resulted in (i.e. key along with its modify index for set and lock operations) or an empty
+     * json object if the operation doesn't produce any result (i.e. delete operations).
+     */
+    public Single<JsonObject> submit(JsonObject op) {
+        PendingOp pendingOp = new PendingOp(op);
+        boolean flushNow;
+        synchronized (this) {
+            if (closed) {
+                pendingOp.result.onError(new IllegalStateException("Transaction batcher is closed."));
+                return pendingOp.result;
+            }
+            pending.add(pendingOp);
+            flushNow = pending.size() >= maxOps;
+            if (!flushNow && inFlight < maxInFlight && timerId == -1) {
+                timerId = vertx.setTimer(flushDelayMs, id -> {
+                    synchronized (this) {
+                        timerId = -1;
+                    }
+                    flush();
+                });
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+        return pendingOp.result;
+    }
+
+    /**
+     * Sends pending operations right away (as many transactions as can be in flight, the rest is sent as soon as a
+     * transaction in flight is done).
+     */
+    public void flush() {
+        List<PendingOp> batch;
+        while ((batch = nextBatch()) != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @return the longest run of pending operations (from the head of the queue) that can be sent right away, null if
+     * there is none.
+     */
+    private synchronized List<PendingOp> nextBatch() {
+        if (inFlight >= maxInFlight || treeDeletionInFlight || pending.isEmpty()) {
+            return null;
+        }
+        List<PendingOp> batch = new ArrayList<>(Math.min(maxOps, pending.size()));
+        while (batch.size() < maxOps && !pending.isEmpty()) {
+            PendingOp pendingOp = pending.peek();
+            if (pendingOp.deletesTree() ? inFlight > 0 : inFlightKeys.contains(pendingOp.key())) {
+                break;
+            }
+            batch.add(pending.poll());
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        inFlight++;
+        batch.forEach(pendingOp -> {
+            inFlightKeys.add(pendingOp.key());
+            treeDeletionInFlight |= pendingOp.deletesTree();
+        });
+        return batch;
+    }
+
+    private void send(List<PendingOp> batch) {
+        JsonArray ops = new JsonArray();
+        batch.forEach(pendingOp -> ops.add(pendingOp.op));
+        log.trace("Executing transaction of '{}' operations.", batch.size());
+        txn.apply(ops).subscribe(
+                results -> {
+                    complete(batch, results);
+                    afterFlush(batch);
+                },
+                throwable -> {
+                    if (throwable instanceof ConsulTxn.RolledBackException && isolateLocks(batch, throwable)) {
+                        afterFlush(batch);
+                        return;
+                    }
+                    failed.addAndGet(batch.size());
+                    log.error("Transaction of '{}' operations has failed. Details: '{}'", batch.size(), throwable.getMessage());
+                    batch.forEach(pendingOp -> pendingOp.result.onError(throwable));
+                    afterFlush(batch);
+                });
+    }
+
+    /**
+     * A lock operation rolls the whole transaction back once its session has been invalidated -> the lock operations of a
+     * rolled back batch are failed (their owners re-acquire them by a new session) and the rest is re-sent, ahead of the
+     * operations submitted in the meantime (so that the submission order is kept).
+     *
+     * @return false if the batch doesn't mix lock operations with other ones, i.e. there is nothing to isolate.
+     */
+    private boolean isolateLocks(List<PendingOp> batch, Throwable throwable) {
+        List<PendingOp> locks = new ArrayList<>();
+        List<PendingOp> others = new ArrayList<>();
+        batch.forEach(pendingOp -> (pendingOp.locks() ? locks : others).add(pendingOp));
+        if (locks.isEmpty() || others.isEmpty()) {
+            return false;
+        }
+        log.warn("Transaction of '{}' operations has been rolled back, re-sending it without its '{}' lock operations.",
+                batch.size(), locks.size());
+        synchronized (this) {
+            for (int i = others.size() - 1; i >= 0; i--) {
+                pending.addFirst(others.get(i));
+            }
+        }
+        failed.addAndGet(locks.size());
+        locks.forEach(pendingOp -> pendingOp.result.onError(throwable));
+        return true;
+    }
+
+    /**
+     * @return number of operations that have failed so far.
+     */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Fails all the pending operations. No operations can be submitted after the batcher has been closed.
+     */
+    public void close() {
+        List<PendingOp> discarded;
+        synchronized (this) {
+            closed = true;
+            if (timerId != -1) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+            discarded = new ArrayList<>(pending);
+            pending.clear();
+        }
+        discarded.forEach(pendingOp -> pendingOp.result.onError(new IllegalStateException("Transaction batcher is closed.")));
+    }
+
+    private void complete(List<PendingOp> batch, JsonArray results) {
+        Map<String, JsonObject> resultsByKey = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            JsonObject kv = results.getJsonObject(i).getJsonObject("KV");
+            if (Objects.nonNull(kv)) {
+                resultsByKey.put(kv.getString("Key"), kv);
+            }
+        }
+        batch.forEach(pendingOp -> {
+            JsonObject kv = pendingOp.op.getJsonObject("KV");
+            String verb = kv.getString("Verb");
+            JsonObject result = "set".equals(verb) || "lock".equals(verb) ? resultsByKey.get(kv.getString("Key")) : null;
+            pendingOp.result.onSuccess(Objects.isNull(result) ? new JsonObject() : result);
+        });
+    }
+
+    private void afterFlush(List<PendingOp> batch) {
+        boolean more;
+        synchronized (this) {
+            inFlight--;
+            batch.forEach(pendingOp -> {
+                inFlightKeys.remove(pendingOp.key());
+                if (pendingOp.deletesTree()) {
+                    treeDeletionInFlight = false;
+                }
+            });
+            more = !pending.isEmpty();
+        }
+        // whatever has been submitted while the transaction was in flight goes right away.
+        if (more) {
+            flush();
+        }
+    }
+
+    private static final class PendingOp {
+        private final JsonObject op;
+        private final SingleSubject<JsonObject> result = SingleSubject.create();
+
+        private PendingOp(JsonObject op) {
+            this.op = op;
+        }
+
+        private String key() {
+            return op.getJsonObject("KV").getString("Key");
+        }
+
+        private boolean locks() {
+            return "lock".equals(op.getJsonObject("KV").getString("Verb"));
+        }
+
+        private boolean deletesTree() {
+            return "delete-tree".equals(op.getJsonObject("KV").getString("Verb"));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec of the values stored in Consul KV store by the cluster maps. Values are either UTF-8 strings (sync maps) or
+ * {@link ClusterSerialization} bytes (multimaps); the ones that are at least {@code compressionThreshold} bytes long get
+ * deflated (if that makes them smaller) and prefixed by a header byte.
+ * <p>
+ * Header byte is {@code 0xFF}, which never occurs in UTF-8 nor as a {@link ClusterSerialization} type byte -> values
+ * without it are plain, i.e. the values stored without compression (or by the nodes that don't compress at all) are read
+ * as is. Decoding never depends on the threshold, so it can be changed (or compression enabled) node by node.
+ */
+public final class ValueCodec {
+
+    private static final byte DEFLATED = (byte) 0xFF;
+
+    // -1 -> compression is disabled.
+    private final int compressionThreshold;
+
+    /**
+     * @param compressionThreshold min length (in bytes) of a value to get compressed, -1 disables compression.
+     */
+    public ValueCodec(int compressionThreshold) {
+        if (compressionThreshold < -1) {
+            throw new IllegalArgumentException("Compression threshold must be either -1 or non negative.");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public byte[] encode(String value) {
+        return encodeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is marked as compressed but can't be inflated.
+     */
+    public String decode(byte[] value) {
+        return new String(decodeBytes(value), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param bytes binary value, must not start with the header byte (i.e. {@link ClusterSerialization} bytes).
+     * @return either the very same array or its deflated form.
+     */
+    public byte[] encodeBytes(byte[] bytes) {
+        if (compressionThreshold < 0 || bytes.length < compressionThreshold) {
+            return bytes;
+        }
+        byte[] deflated = deflate(bytes);
+        return deflated.length < bytes.length ? deflated : bytes;
+    }
+
+    /**
+     * @return either the very same array or its inflated form.
+     * @throws IllegalArgumentException if the value is marked as compressed but can't be inflated.
+     */
+    public byte[] decodeBytes(byte[] value) {
+        if (value.length == 0 || value[0] != DEFLATED) {
+            return value;
+        }
+        return inflate(value);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            out.write(DEFLATED);
+            byte[] chunk = new byte[Math.min(bytes.length + 16, 8192)];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] value) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(value, 1, value.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(value.length * 3);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Compressed value is truncated.");
+                }
+                out.write(chunk, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed value is malformed.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChoosableSetTest {
+
+    @Test
+    public void valuesAreChosenRoundRobin() {
+        ChoosableSet<String> set = ChoosableSet.of(new Object[]{"a", "b", "c"}, null);
+
+        assertEquals(Arrays.asList("a", "b", "c", "a", "b", "c", "a"), choose(set, 7));
+    }
+
+    @Test
+    public void cursorIsCarriedOverToTheReplacingSet() {
+        ChoosableSet<String> previous = ChoosableSet.of(new Object[]{"a", "b", "c"}, null);
+        choose(previous, 2);
+
+        ChoosableSet<String> set = ChoosableSet.of(new Object[]{"a", "b", "c", "d"}, previous);
+
+        // round robin goes on from where the previous set has stopped rather than starting over at "a".
+        assertEquals(Arrays.asList("c", "d", "a"), choose(set, 3));
+    }
+
+    @Test
+    public void singleValueIsAlwaysChosen() {
+        ChoosableSet<String> set = ChoosableSet.of(new Object[]{"a"}, null);
+
+        assertEquals(Arrays.asList("a", "a", "a"), choose(set, 3));
+    }
+
+    @Test
+    public void emptySetChoosesNothing() {
+        ChoosableSet<String> set = ChoosableSet.of(new Object[0], null);
+
+        assertSame(ChoosableSet.empty(), set);
+        assertTrue(set.isEmpty());
+        assertNull(set.choose());
+        assertFalse(set.iterator().hasNext());
+    }
+
+    @Test
+    public void iterationDoesNotMoveTheCursor() {
+        ChoosableSet<String> set = ChoosableSet.of(new Object[]{"a", "b"}, null);
+
+        List<String> values = new ArrayList<>();
+        set.forEach(values::add);
+
+        assertEquals(Arrays.asList("a", "b"), values);
+        assertEquals("a", set.choose());
+    }
+
+    private static List<String> choose(ChoosableSet<String> set, int times) {
+        List<String> chosen = new ArrayList<>();
+        for (int i = 0; i < times; i++) {
+            chosen.add(set.choose());
+        }
+        return chosen;
+    }
+}
@@ -0,0 +1,136 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterEventDispatcherTest {
+
+    private ClusterEventDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void tasksOfALaneRunInSubmissionOrder() throws InterruptedException {
+        dispatcher = new ClusterEventDispatcher(2, 1000);
+        ClusterEventDispatcher.Lane first = dispatcher.lane("first");
+        ClusterEventDispatcher.Lane second = dispatcher.lane("second");
+        List<Integer> firstRun = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> secondRun = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expected = new ArrayList<>();
+
+        // more tasks than a lane runs in a row -> the lanes take turns.
+        for (int i = 0; i < 500; i++) {
+            int task = i;
+            expected.add(task);
+            assertTrue(first.dispatch(() -> firstRun.add(task)));
+            assertTrue(second.dispatch(() -> secondRun.add(task)));
+        }
+        drain(first);
+        drain(second);
+
+        assertEquals(expected, firstRun);
+        assertEquals(expected, secondRun);
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheLane() throws InterruptedException {
+        dispatcher = new ClusterEventDispatcher(1, 10);
+        ClusterEventDispatcher.Lane lane = dispatcher.lane("lane");
+        List<String> run = Collections.synchronizedList(new ArrayList<>());
+
+        lane.dispatch(() -> {
+            throw new IllegalStateException("failed");
+        });
+        lane.dispatch(() -> run.add("next"));
+        drain(lane);
+
+        assertEquals(Collections.singletonList("next"), run);
+    }
+
+    @Test
+    public void fullLaneRejectsNewTasksAndKeepsTheQueuedOnes() throws InterruptedException {
+        dispatcher = new ClusterEventDispatcher(1, 2);
+        ClusterEventDispatcher.Lane lane = dispatcher.lane("lane");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedRun = new CountDownLatch(2);
+        List<String> run = Collections.synchronizedList(new ArrayList<>());
+
+        assertTrue(lane.dispatch(() -> {
+            started.countDown();
+            await(release);
+        }));
+        // the running task doesn't take up room.
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(lane.dispatch(() -> run(run, "a", queuedRun)));
+        assertTrue(lane.dispatch(() -> run(run, "b", queuedRun)));
+        assertFalse(lane.dispatch(() -> run.add("c")));
+        assertEquals(1, dispatcher.rejectedCount());
+
+        release.countDown();
+        assertTrue(queuedRun.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), run);
+        // room again.
+        assertTrue(lane.dispatch(() -> run.add("d")));
+        drain(lane);
+        assertEquals(Arrays.asList("a", "b", "d"), run);
+    }
+
+    @Test
+    public void closedDispatcherRejectsTasks() {
+        dispatcher = new ClusterEventDispatcher();
+        ClusterEventDispatcher.Lane lane = dispatcher.lane("lane");
+
+        dispatcher.close();
+
+        assertFalse(lane.dispatch(() -> {
+        }));
+        assertFalse(dispatcher.lane("other").dispatch(() -> {
+        }));
+        // not full -> not counted as an overflow.
+        assertEquals(0, dispatcher.rejectedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLaneCapacityIsRejected() {
+        new ClusterEventDispatcher(1, 0);
+    }
+
+    /**
+     * Waits for the tasks dispatched to the lane so far to be executed.
+     */
+    private static void drain(ClusterEventDispatcher.Lane lane) throws InterruptedException {
+        CountDownLatch drained = new CountDownLatch(1);
+        assertTrue(lane.dispatch(drained::countDown));
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void run(List<String> run, String task, CountDownLatch done) {
+        run.add(task);
+        done.countDown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterMembershipTest {
+
+    private ClusterMembership membership;
+
+    @Before
+    public void setUp() {
+        membership = new ClusterMembership();
+    }
+
+    @Test
+    public void firstViewJoinsAllTheNodesSorted() {
+        ClusterMembership.Delta delta = membership.update(10, members("c", "a", "b"));
+
+        assertEquals(Arrays.asList("a", "b", "c"), delta.joined());
+        assertTrue(delta.left().isEmpty());
+        assertEquals(Arrays.asList("a", "b", "c"), membership.snapshot().nodes());
+        assertEquals(10, membership.snapshot().version());
+    }
+
+    @Test
+    public void onlyChangedNodesAreReported() {
+        membership.update(10, members("a", "b", "c"));
+
+        ClusterMembership.Delta delta = membership.update(11, members("a", "d", "c", "e"));
+
+        assertEquals(Arrays.asList("d", "e"), delta.joined());
+        assertEquals(Collections.singletonList("b"), delta.left());
+        assertEquals(Arrays.asList("a", "c", "d", "e"), delta.snapshot().nodes());
+        assertSame(delta.snapshot(), membership.snapshot());
+    }
+
+    @Test
+    public void leavesAreSorted() {
+        membership.update(10, members("d", "a", "c", "b"));
+
+        ClusterMembership.Delta delta = membership.update(11, members("b"));
+
+        assertEquals(Arrays.asList("a", "c", "d"), delta.left());
+        assertTrue(delta.joined().isEmpty());
+    }
+
+    @Test
+    public void unchangedViewIsNoOp() {
+        membership.update(10, members("a", "b"));
+        MembershipSnapshot before = membership.snapshot();
+
+        ClusterMembership.Delta delta = membership.update(12, members("b", "a"));
+
+        assertTrue(delta.isEmpty());
+        // no new version for an empty delta.
+        assertSame(before, membership.snapshot());
+        assertEquals(10, membership.snapshot().version());
+    }
+
+    @Test
+    public void nodeInfoIsKeptAlongWithTheNode() {
+        membership.update(10, members("a"));
+
+        NodeInfo nodeInfo = membership.snapshot().nodeInfo("a");
+
+        assertEquals("host-a", nodeInfo.host());
+        assertNull(membership.snapshot().nodeInfo("b"));
+    }
+
+    private static Map<String, NodeInfo> members(String... nodeIds) {
+        Map<String, NodeInfo> members = new LinkedHashMap<>();
+        for (String nodeId : nodeIds) {
+            members.put(nodeId, new NodeInfo(nodeId, "host-" + nodeId, 5000, "__DEFAULT__", 1));
+        }
+        return members;
+    }
+}
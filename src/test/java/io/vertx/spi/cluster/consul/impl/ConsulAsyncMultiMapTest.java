@@ -0,0 +1,283 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.reactivex.subjects.SingleSubject;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.cluster.ChoosableIterable;
+import io.vertx.ext.consul.ConsulClientOptions;
+import io.vertx.reactivex.ext.consul.ConsulClient;
+import io.vertx.spi.cluster.consul.ConsulClusterManagerOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Near-cache of the multimap: states are handed over the way the watch hands them over, writes go to a fake Consul whose
+ * responses are completed by the test. The node has no session, i.e. its entries are written by plain sets.
+ */
+public class ConsulAsyncMultiMapTest {
+
+    private static final String MAP_NAME = "subs";
+    private static final String PREFIX = ConsulAsyncMultiMap.ROOT_PREFIX + "/" + MAP_NAME + "/";
+    // long enough for the timers to never fire: additions and transactions are sent by explicit flushes only.
+    private static final long NEVER_MS = 60_000;
+
+    private Vertx vertx;
+    private ClusterEventDispatcher dispatcher;
+    private TxnBatcher txnBatcher;
+    private final ValueCodec valueCodec = new ValueCodec(-1);
+    // transactions sent by the batcher so far, along with their pending responses.
+    private final List<JsonArray> sent = new ArrayList<>();
+    private final List<SingleSubject<JsonArray>> responses = new ArrayList<>();
+    // bulk deletions, committed right away.
+    private final List<JsonArray> bulk = new ArrayList<>();
+    private long modifyIndex = 100;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        dispatcher = new ClusterEventDispatcher();
+        txnBatcher = new TxnBatcher(vertx, this::execute, ConsulTxn.MAX_OPS, NEVER_MS, 1);
+    }
+
+    @After
+    public void tearDown() {
+        txnBatcher.close();
+        dispatcher.close();
+        vertx.close();
+    }
+
+    @Test
+    public void committedAdditionIsOverlaidUntilTheWatchCatchesUp() throws Exception {
+        ConsulAsyncMultiMap<String, String> map = map(0);
+        map.init(state(), 1).blockingAwait();
+
+        CompletableFuture<Void> added = await(handler -> map.add("addr", "node-1", handler));
+        commit(0);
+        added.get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("node-1"), values(map, "addr"));
+
+        // state read before the addition has been committed.
+        map.applyState(state(), 50).blockingAwait();
+        assertEquals(Collections.singletonList("node-1"), values(map, "addr"));
+
+        // the addition is reflected -> it's taken from the state from now on.
+        map.applyState(state(entry("addr", "node-1", null, 101)), 101).blockingAwait();
+        map.applyState(state(), 102).blockingAwait();
+        assertEquals(Collections.emptyList(), values(map, "addr"));
+    }
+
+    @Test
+    public void committedRemovalIsOverlaidUntilTheEntryIsGone() throws Exception {
+        ConsulAsyncMultiMap<String, String> map = map(0);
+        map.init(state(entry("addr", "node-1", null, 10)), 10).blockingAwait();
+
+        CompletableFuture<Boolean> removed = await(handler -> map.remove("addr", "node-1", handler));
+        waitForSent(1);
+        commit(0);
+        assertTrue(removed.get(5, TimeUnit.SECONDS));
+
+        // state read before the removal has been committed.
+        map.applyState(state(entry("addr", "node-1", null, 10)), 11).blockingAwait();
+        assertEquals(Collections.emptyList(), values(map, "addr"));
+
+        map.applyState(state(), 12).blockingAwait();
+        // added again by another node -> visible.
+        map.applyState(state(entry("addr", "node-1", null, 13)), 13).blockingAwait();
+        assertEquals(Collections.singletonList("node-1"), values(map, "addr"));
+    }
+
+    @Test
+    public void removeAllForValueDeletesOwnAndUnownedEntriesOnly() throws Exception {
+        ConsulAsyncMultiMap<String, String> map = map(0);
+        map.init(state(
+                entry("held-by-other", "node-1", "other-session", 10),
+                entry("held-by-none", "node-1", null, 11),
+                entry("other-value", "node-2", null, 12)), 12).blockingAwait();
+        CompletableFuture<Void> added = await(handler -> map.add("own", "node-1", handler));
+        commit(0);
+        added.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> removed = await(handler -> map.removeAllForValue("node-1", handler));
+        waitForSent(2);
+        commit(1);
+        removed.get(5, TimeUnit.SECONDS);
+
+        // own entry -> the batcher, entry held by no session -> bulk deletion, the other session's entry -> none.
+        assertEquals(Collections.singletonList(PREFIX + "own/" + digest("node-1")), keys(sent.get(1)));
+        assertEquals(1, bulk.size());
+        assertEquals(Collections.singletonList(PREFIX + "held-by-none/" + digest("node-1")), keys(bulk.get(0)));
+        assertEquals(Collections.emptyList(), values(map, "own"));
+        assertEquals(Collections.emptyList(), values(map, "held-by-other"));
+        assertEquals(Collections.emptyList(), values(map, "held-by-none"));
+        assertEquals(Collections.singletonList("node-2"), values(map, "other-value"));
+    }
+
+    @Test
+    public void removalIsSentAfterTheCoalescedAdditionsOfItsEntry() throws Exception {
+        ConsulAsyncMultiMap<String, String> map = map(NEVER_MS);
+        map.init(state(), 1).blockingAwait();
+
+        CompletableFuture<Void> first = await(handler -> map.add("addr", "node-1", handler));
+        CompletableFuture<Void> second = await(handler -> map.add("addr", "node-2", handler));
+        // still within the coalescing window -> flushed by the removal.
+        assertEquals(0, sent.size());
+        CompletableFuture<Boolean> removed = await(handler -> map.remove("addr", "node-1", handler));
+
+        assertEquals(1, sent.size());
+        assertEquals(Arrays.asList(PREFIX + "addr/" + digest("node-1"), PREFIX + "addr/" + digest("node-2")), keys(sent.get(0)));
+        commit(0);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        // the deletion has waited for the addition of its entry.
+        waitForSent(2);
+        assertEquals(Collections.singletonList(PREFIX + "addr/" + digest("node-1")), keys(sent.get(1)));
+        commit(1);
+
+        assertTrue(removed.get(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("node-2"), values(map, "addr"));
+    }
+
+    @Test
+    public void additionAfterARemovalWins() throws Exception {
+        ConsulAsyncMultiMap<String, String> map = map(0);
+        map.init(state(entry("addr", "node-1", null, 10)), 10).blockingAwait();
+
+        CompletableFuture<Boolean> removed = await(handler -> map.remove("addr", "node-1", handler));
+        CompletableFuture<Void> added = await(handler -> map.add("addr", "node-1", handler));
+
+        // both in a single transaction -> their results are handed over in no particular order.
+        String key = PREFIX + "addr/" + digest("node-1");
+        assertEquals(Arrays.asList(key, key), keys(sent.get(0)));
+        commit(0);
+
+        assertTrue(removed.get(5, TimeUnit.SECONDS));
+        added.get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("node-1"), values(map, "addr"));
+    }
+
+    private ConsulAsyncMultiMap<String, String> map(long coalescingWindowMs) {
+        ConsulClientOptions consulClientOptions = new ConsulClientOptions();
+        io.vertx.reactivex.core.Vertx rxVertx = io.vertx.reactivex.core.Vertx.newInstance(vertx);
+        // never created -> id is null.
+        ConsulSession session = new ConsulSession(rxVertx, ConsulClient.create(rxVertx, consulClientOptions), "test", "check", NEVER_MS);
+        ConsulClusterManagerOptions options = new ConsulClusterManagerOptions().setSubscriptionCoalescingWindowMs(coalescingWindowMs);
+        return new ConsulAsyncMultiMap<>(MAP_NAME, vertx, consulClientOptions, options, dispatcher, this::executeBulk, txnBatcher,
+                session, valueCodec, new ConsulClusterMetrics());
+    }
+
+    private Single<JsonArray> execute(JsonArray ops) {
+        SingleSubject<JsonArray> response = SingleSubject.create();
+        synchronized (sent) {
+            sent.add(ops);
+            responses.add(response);
+        }
+        return response;
+    }
+
+    private Single<JsonArray> executeBulk(JsonArray ops) {
+        bulk.add(ops);
+        return Single.just(new JsonArray());
+    }
+
+    /**
+     * Commits the given transaction: every set operation results in its KV entry of the next modify index.
+     */
+    private void commit(int transaction) {
+        JsonArray results = new JsonArray();
+        JsonArray ops;
+        SingleSubject<JsonArray> response;
+        synchronized (sent) {
+            ops = sent.get(transaction);
+            response = responses.get(transaction);
+        }
+        ops.forEach(op -> {
+            JsonObject kv = ((JsonObject) op).getJsonObject("KV");
+            if ("set".equals(kv.getString("Verb"))) {
+                results.add(new JsonObject().put("KV", new JsonObject().put("Key", kv.getString("Key")).put("ModifyIndex", ++modifyIndex)));
+            }
+        });
+        response.onSuccess(results);
+    }
+
+    /**
+     * Flushes the batcher until the given number of transactions have been sent, the operations submitted by the lane
+     * get there asynchronously.
+     */
+    private void waitForSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            txnBatcher.flush();
+            synchronized (sent) {
+                if (sent.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("'" + count + "' transactions haven't been sent.");
+    }
+
+    private static <T> CompletableFuture<T> await(Consumer<Handler<AsyncResult<T>>> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        operation.accept(result -> {
+            if (result.succeeded()) {
+                future.complete(result.result());
+            } else {
+                future.completeExceptionally(result.cause());
+            }
+        });
+        return future;
+    }
+
+    private static List<String> values(ConsulAsyncMultiMap<String, String> map, String key) throws Exception {
+        CompletableFuture<ChoosableIterable<String>> values = await(handler -> map.get(key, handler));
+        List<String> list = new ArrayList<>();
+        values.get(5, TimeUnit.SECONDS).forEach(list::add);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static Buffer state(JsonObject... entries) {
+        JsonArray state = new JsonArray();
+        for (JsonObject entry : entries) {
+            state.add(entry);
+        }
+        return state.toBuffer();
+    }
+
+    private JsonObject entry(String key, String value, String session, long modifyIndex) {
+        JsonObject entry = new JsonObject()
+                .put("Key", PREFIX + key + "/" + digest(value))
+                .put("Value", Base64.getEncoder().encodeToString(valueCodec.encodeBytes(ClusterSerialization.encode(value))))
+                .put("ModifyIndex", modifyIndex);
+        return session == null ? entry : entry.put("Session", session);
+    }
+
+    private static String digest(String value) {
+        return ClusterSerialization.digest(ClusterSerialization.encode(value));
+    }
+
+    private static List<String> keys(JsonArray ops) {
+        List<String> keys = new ArrayList<>();
+        ops.forEach(op -> keys.add(((JsonObject) op).getJsonObject("KV").getString("Key")));
+        return keys;
+    }
+}
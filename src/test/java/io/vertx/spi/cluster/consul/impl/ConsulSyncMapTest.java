@@ -0,0 +1,201 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.reactivex.subjects.SingleSubject;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * States are applied the way {@link ConsulSyncMapRegistry} applies them, i.e. by beginApply / applyEntry / endApply,
+ * right on the test thread. Local writes are sent to a fake Consul whose responses are completed by the test.
+ */
+public class ConsulSyncMapTest {
+
+    private static final String MAP_NAME = "map";
+    // long enough for the flush timer to never fire, transactions are sent by explicit flushes only.
+    private static final long FLUSH_DELAY_MS = 60_000;
+
+    private Vertx vertx;
+    private ClusterEventDispatcher dispatcher;
+    private ClusterEventDispatcher.Lane lane;
+    private TxnBatcher txnBatcher;
+    private ConsulSyncMap map;
+    // latest state applied to the map, i.e. what the registry would hand over as the last state of the bucket.
+    private Buffer lastState = new JsonArray().toBuffer();
+    private final List<SingleSubject<JsonArray>> responses = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        dispatcher = new ClusterEventDispatcher();
+        lane = dispatcher.lane(MAP_NAME);
+        txnBatcher = new TxnBatcher(vertx, this::execute, 64, FLUSH_DELAY_MS, 1);
+        map = new ConsulSyncMap(MAP_NAME, new SyncMapLayout(1), lane, txnBatcher, new ValueCodec(-1), bucket -> lastState);
+    }
+
+    @After
+    public void tearDown() {
+        txnBatcher.close();
+        dispatcher.close();
+        vertx.close();
+    }
+
+    @Test
+    public void remoteRemovalIsAppliedAlongsideAPendingLocalKey() throws IOException {
+        apply(state(entry("a", "1", 1), entry("b", "1", 2)));
+        map.put("c", "local");
+
+        // "b" has been removed remotely while "c" (not committed locally yet) made it into the state.
+        apply(state(entry("a", "1", 1), entry("c", "local", 3)));
+
+        assertFalse(map.containsKey("b"));
+        assertEquals("1", map.get("a"));
+        assertEquals("local", map.get("c"));
+    }
+
+    @Test
+    public void keysOfAnIncompleteStateAreReappliedByTheNextOne() throws IOException {
+        apply(state(entry("a", "1", 1), entry("b", "1", 2)));
+
+        // the state can't be decoded past "a" -> it is never completed.
+        map.beginApply(0);
+        map.applyEntry(MAP_NAME + "/a", bytes("2"), 3);
+
+        apply(state(entry("a", "2", 3), entry("b", "1", 2)));
+
+        assertEquals("2", map.get("a"));
+        assertEquals("1", map.get("b"));
+    }
+
+    @Test
+    public void localPutWinsOverAnInPlacePublish() {
+        map.beginApply(0);
+        map.applyEntry(MAP_NAME + "/a", bytes("remote"), 1);
+        map.applyEntry(MAP_NAME + "/b", bytes("remote"), 2);
+        map.put("a", "local");
+        map.endApply();
+
+        assertEquals("local", map.get("a"));
+        assertEquals("remote", map.get("b"));
+    }
+
+    @Test
+    public void localPutWinsOverASwapPublish() {
+        int keys = 100;
+        map.beginApply(0);
+        for (int i = 0; i < keys; i++) {
+            map.applyEntry(MAP_NAME + "/key-" + i, bytes("remote"), i + 1);
+        }
+        map.put("key-0", "local");
+        map.endApply();
+
+        assertEquals(keys, map.size());
+        assertEquals("local", map.get("key-0"));
+        assertEquals("remote", map.get("key-1"));
+    }
+
+    @Test
+    public void failedWriteIsRevertedToTheValueInConsul() throws Exception {
+        apply(state(entry("a", "1", 1)));
+        map.put("a", "local");
+        map.put("b", "local");
+        txnBatcher.flush();
+
+        responses.get(0).onError(new IllegalStateException("consul is down"));
+        drainLane();
+
+        assertEquals("1", map.get("a"));
+        assertFalse(map.containsKey("b"));
+    }
+
+    @Test
+    public void failedWriteIsNotRevertedWhileTheKeyIsWrittenAgain() throws Exception {
+        apply(state(entry("a", "1", 1)));
+        map.put("a", "first");
+        txnBatcher.flush();
+        map.put("a", "second");
+
+        responses.get(0).onError(new IllegalStateException("consul is down"));
+        drainLane();
+
+        assertEquals("second", map.get("a"));
+    }
+
+    @Test
+    public void echoOfACommittedWriteIsSkipped() throws Exception {
+        apply(state(entry("a", "1", 1)));
+        map.put("a", "local");
+        txnBatcher.flush();
+
+        responses.get(0).onSuccess(new JsonArray().add(new JsonObject()
+                .put("KV", new JsonObject().put("Key", map.keyPath("a")).put("ModifyIndex", 5))));
+        drainLane();
+        // a stale state (read before the write has been committed) is ignored as well.
+        apply(state(entry("a", "1", 1)));
+        assertEquals("local", map.get("a"));
+
+        map.remove("a");
+        assertNull(map.get("a"));
+        assertTrue(map.isEmpty());
+    }
+
+    private void apply(Buffer state) throws IOException {
+        map.beginApply(0);
+        KvListDecoder.decode(state, SyncMapLayout.flatPrefix().length(),
+                (key, value, modifyIndex, session) -> map.applyEntry(key, value, modifyIndex));
+        lastState = state;
+        map.endApply();
+    }
+
+    /**
+     * Waits for the tasks dispatched to the watch lane so far to be executed.
+     */
+    private void drainLane() throws InterruptedException {
+        CountDownLatch drained = new CountDownLatch(1);
+        assertTrue(lane.dispatch(drained::countDown));
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+    }
+
+    private Single<JsonArray> execute(JsonArray ops) {
+        SingleSubject<JsonArray> response = SingleSubject.create();
+        responses.add(response);
+        return response;
+    }
+
+    private static Buffer state(JsonObject... entries) {
+        JsonArray state = new JsonArray();
+        for (JsonObject entry : entries) {
+            state.add(entry);
+        }
+        return state.toBuffer();
+    }
+
+    private static JsonObject entry(String key, String value, long modifyIndex) {
+        return new JsonObject()
+                .put("Key", SyncMapLayout.flatPrefix() + MAP_NAME + "/" + key)
+                .put("Value", Base64.getEncoder().encodeToString(bytes(value)))
+                .put("ModifyIndex", modifyIndex);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
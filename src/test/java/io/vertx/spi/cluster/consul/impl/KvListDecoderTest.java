@@ -0,0 +1,104 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KvListDecoderTest {
+
+    private static final String PREFIX = "__vertx.syncMaps/";
+
+    private final List<Object[]> entries = new ArrayList<>();
+
+    @Test
+    public void keysAreStrippedOfThePrefixAndValuesAreDecoded() throws IOException {
+        Buffer body = new JsonArray()
+                .add(entry(PREFIX + "map/a", "value-a", 7))
+                .add(entry(PREFIX + "map/b", "value-b", 9))
+                .toBuffer();
+
+        int count = KvListDecoder.decode(body, PREFIX.length(), this::collect);
+
+        assertEquals(2, count);
+        assertEquals("map/a", entries.get(0)[0]);
+        assertArrayEquals("value-a".getBytes(StandardCharsets.UTF_8), (byte[]) entries.get(0)[1]);
+        assertEquals(7L, entries.get(0)[2]);
+        assertEquals("map/b", entries.get(1)[0]);
+        assertEquals(9L, entries.get(1)[2]);
+    }
+
+    @Test
+    public void nullValueIsDecodedAsEmpty() throws IOException {
+        Buffer body = new JsonArray()
+                .add(new JsonObject().put("Key", PREFIX + "map/a").putNull("Value").put("ModifyIndex", 3))
+                .toBuffer();
+
+        KvListDecoder.decode(body, PREFIX.length(), this::collect);
+
+        assertArrayEquals(new byte[0], (byte[]) entries.get(0)[1]);
+    }
+
+    @Test
+    public void sessionIsReadAsIs() throws IOException {
+        Buffer body = new JsonArray()
+                .add(entry(PREFIX + "map/locked", "v", 1).put("Session", "adf4238a-882b-9ddc-4a9d-5b6758e4159e"))
+                .add(entry(PREFIX + "map/plain", "v", 2))
+                .add(entry(PREFIX + "map/released", "v", 3).putNull("Session"))
+                .toBuffer();
+
+        KvListDecoder.decode(body, PREFIX.length(), this::collect);
+
+        assertEquals("adf4238a-882b-9ddc-4a9d-5b6758e4159e", entries.get(0)[3]);
+        assertNull(entries.get(1)[3]);
+        assertNull(entries.get(2)[3]);
+    }
+
+    @Test
+    public void prefixFolderAndUnknownFieldsAreSkipped() throws IOException {
+        Buffer body = new JsonArray()
+                .add(entry(PREFIX, "", 1))
+                .add(entry(PREFIX + "map/a", "v", 2)
+                        .put("Flags", 0)
+                        .put("Extra", new JsonObject().put("Nested", new JsonArray().add(1).add(2))))
+                .toBuffer();
+
+        int count = KvListDecoder.decode(body, PREFIX.length(), this::collect);
+
+        assertEquals(1, count);
+        assertEquals("map/a", entries.get(0)[0]);
+    }
+
+    @Test
+    public void emptyBodyHasNoEntries() throws IOException {
+        assertEquals(0, KvListDecoder.decode(Buffer.buffer(), PREFIX.length(), this::collect));
+    }
+
+    @Test(expected = IOException.class)
+    public void nonArrayBodyIsRejected() throws IOException {
+        KvListDecoder.decode(Buffer.buffer("{\"Key\":\"a\"}"), PREFIX.length(), this::collect);
+    }
+
+    private void collect(String key, byte[] value, long modifyIndex, String session) {
+        entries.add(new Object[]{key, value, modifyIndex, session});
+    }
+
+    private static JsonObject entry(String key, String value, long modifyIndex) {
+        return new JsonObject()
+                .put("LockIndex", 0)
+                .put("Key", key)
+                .put("Value", Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)))
+                .put("CreateIndex", 1)
+                .put("ModifyIndex", modifyIndex);
+    }
+}
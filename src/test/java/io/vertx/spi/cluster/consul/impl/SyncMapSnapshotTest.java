@@ -0,0 +1,98 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class SyncMapSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private SyncMapSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("snapshots").resolve("sync-maps.snapshot");
+        snapshot = new SyncMapSnapshot(file);
+    }
+
+    @Test
+    public void savedStateIsLoadedBack() {
+        snapshot.save(new long[]{7, 42}, new Buffer[]{Buffer.buffer("[{\"Key\":\"a\"}]"), Buffer.buffer()});
+
+        SyncMapSnapshot.Entry[] entries = snapshot.load(2);
+
+        assertEquals(2, entries.length);
+        assertEquals(7, entries[0].index());
+        assertEquals("[{\"Key\":\"a\"}]", entries[0].body().toString());
+        assertEquals(42, entries[1].index());
+        assertEquals(0, entries[1].body().length());
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void latestSaveReplacesThePreviousOne() {
+        snapshot.save(new long[]{7}, new Buffer[]{Buffer.buffer("[1]")});
+        snapshot.save(new long[]{8}, new Buffer[]{Buffer.buffer("[1,2]")});
+
+        SyncMapSnapshot.Entry[] entries = new SyncMapSnapshot(file).load(1);
+
+        assertEquals(8, entries[0].index());
+        assertEquals("[1,2]", entries[0].body().toString());
+    }
+
+    @Test
+    public void missingSnapshotIsIgnored() {
+        assertNull(snapshot.load(1));
+    }
+
+    @Test
+    public void snapshotOfAnotherBucketCountIsIgnored() {
+        snapshot.save(new long[]{7, 42}, new Buffer[]{Buffer.buffer("[]"), Buffer.buffer("[]")});
+
+        assertNull(snapshot.load(4));
+    }
+
+    @Test
+    public void corruptedSnapshotIsIgnored() throws IOException {
+        snapshot.save(new long[]{7}, new Buffer[]{Buffer.buffer("[{\"Key\":\"a\"}]")});
+        byte[] bytes = Files.readAllBytes(file);
+        // last byte of the body.
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertNull(snapshot.load(1));
+    }
+
+    @Test
+    public void truncatedSnapshotIsIgnored() throws IOException {
+        snapshot.save(new long[]{7}, new Buffer[]{Buffer.buffer("[{\"Key\":\"a\"}]")});
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertNull(snapshot.load(1));
+    }
+
+    @Test
+    public void unknownFormatIsIgnored() throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+
+        assertNull(snapshot.load(1));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}, Files.readAllBytes(file));
+    }
+}
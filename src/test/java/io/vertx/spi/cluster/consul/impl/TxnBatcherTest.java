@@ -0,0 +1,208 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TxnBatcherTest {
+
+    // long enough for the flush timer to never fire, transactions are sent by explicit flushes only.
+    private static final long FLUSH_DELAY_MS = 60_000;
+
+    private Vertx vertx;
+    // transactions sent so far, along with their pending responses.
+    private final List<JsonArray> sent = new ArrayList<>();
+    private final List<SingleSubject<JsonArray>> responses = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void pendingOpsAreMergedIntoTransactionsOfMaxOps() {
+        TxnBatcher batcher = batcher(2, 1);
+
+        batcher.submit(ConsulTxn.set("a", "1"));
+        batcher.submit(ConsulTxn.set("b", "1"));
+        batcher.submit(ConsulTxn.set("c", "1"));
+
+        // the first two have been sent as soon as there were enough of them.
+        assertEquals(1, sent.size());
+        assertEquals(keys("a", "b"), keys(sent.get(0)));
+        commit(0);
+        assertEquals(2, sent.size());
+        assertEquals(keys("c"), keys(sent.get(1)));
+    }
+
+    @Test
+    public void writesOfTheSameKeyAreNeverInFlightTogether() {
+        TxnBatcher batcher = batcher(64, 4);
+
+        batcher.submit(ConsulTxn.set("a", "1"));
+        batcher.flush();
+        batcher.submit(ConsulTxn.set("a", "2"));
+        batcher.submit(ConsulTxn.set("b", "1"));
+        batcher.flush();
+
+        // "a" is in flight -> nothing behind it goes.
+        assertEquals(1, sent.size());
+        commit(0);
+        assertEquals(2, sent.size());
+        assertEquals(keys("a", "b"), keys(sent.get(1)));
+        assertEquals("Mg==", sent.get(1).getJsonObject(0).getJsonObject("KV").getString("Value"));
+    }
+
+    @Test
+    public void disjointTransactionsArePipelinedUpToMaxInFlight() {
+        TxnBatcher batcher = batcher(64, 2);
+
+        batcher.submit(ConsulTxn.set("a", "1"));
+        batcher.flush();
+        batcher.submit(ConsulTxn.set("b", "1"));
+        batcher.flush();
+        batcher.submit(ConsulTxn.set("c", "1"));
+        batcher.flush();
+
+        assertEquals(2, sent.size());
+        commit(1);
+        assertEquals(3, sent.size());
+        assertEquals(keys("c"), keys(sent.get(2)));
+    }
+
+    @Test
+    public void treeDeletionWaitsForAllTransactionsInFlightAndBlocksTheRest() {
+        TxnBatcher batcher = batcher(64, 4);
+
+        batcher.submit(ConsulTxn.set("a", "1"));
+        batcher.flush();
+        batcher.submit(ConsulTxn.deleteTree("prefix/"));
+        batcher.flush();
+        assertEquals(1, sent.size());
+
+        commit(0);
+        assertEquals(2, sent.size());
+        assertEquals(keys("prefix/"), keys(sent.get(1)));
+
+        batcher.submit(ConsulTxn.set("b", "1"));
+        batcher.flush();
+        assertEquals(2, sent.size());
+        commit(1);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void resultsAreHandedOverByKey() {
+        TxnBatcher batcher = batcher(64, 1);
+
+        TestObserver<JsonObject> set = batcher.submit(ConsulTxn.set("a", "1")).test();
+        TestObserver<JsonObject> delete = batcher.submit(ConsulTxn.delete("b")).test();
+        batcher.flush();
+        commit(0);
+
+        set.assertValue(kv -> kv.getString("Key").equals("a") && kv.getLong("ModifyIndex") == 42);
+        delete.assertValue(JsonObject::isEmpty);
+    }
+
+    @Test
+    public void failureIsFannedOutToEveryOpOfTheTransaction() {
+        TxnBatcher batcher = batcher(64, 1);
+
+        TestObserver<JsonObject> first = batcher.submit(ConsulTxn.set("a", "1")).test();
+        TestObserver<JsonObject> second = batcher.submit(ConsulTxn.delete("b")).test();
+        TestObserver<JsonObject> third = batcher.submit(ConsulTxn.set("c", "1")).test();
+        batcher.flush();
+        IllegalStateException failure = new IllegalStateException("consul is down");
+        responses.get(0).onError(failure);
+
+        first.assertError(failure);
+        second.assertError(failure);
+        third.assertError(failure);
+        assertEquals(3, batcher.failedCount());
+    }
+
+    @Test
+    public void rolledBackLocksAreFailedAndTheRestIsResent() {
+        TxnBatcher batcher = batcher(64, 1);
+
+        TestObserver<JsonObject> lock = batcher.submit(ConsulTxn.lock("a", new byte[]{1}, "dead-session")).test();
+        TestObserver<JsonObject> set = batcher.submit(ConsulTxn.set("b", "1")).test();
+        batcher.flush();
+        responses.get(0).onError(new ConsulTxn.RolledBackException("invalid session"));
+
+        lock.assertError(ConsulTxn.RolledBackException.class);
+        set.assertNoValues();
+        assertEquals(2, sent.size());
+        assertEquals(keys("b"), keys(sent.get(1)));
+        commit(1);
+        set.assertValueCount(1);
+        assertEquals(1, batcher.failedCount());
+    }
+
+    @Test
+    public void closeFailsPendingOps() {
+        TxnBatcher batcher = batcher(64, 1);
+
+        TestObserver<JsonObject> pending = batcher.submit(ConsulTxn.set("a", "1")).test();
+        batcher.close();
+
+        pending.assertError(IllegalStateException.class);
+        batcher.submit(ConsulTxn.set("b", "1")).test().assertError(IllegalStateException.class);
+        assertEquals(0, sent.size());
+    }
+
+    private TxnBatcher batcher(int maxOps, int maxInFlight) {
+        return new TxnBatcher(vertx, this::execute, maxOps, FLUSH_DELAY_MS, maxInFlight);
+    }
+
+    private Single<JsonArray> execute(JsonArray ops) {
+        SingleSubject<JsonArray> response = SingleSubject.create();
+        sent.add(ops);
+        responses.add(response);
+        return response;
+    }
+
+    /**
+     * Commits the given transaction: every set operation results in its KV entry of modify index 42.
+     */
+    private void commit(int transaction) {
+        JsonArray results = new JsonArray();
+        sent.get(transaction).forEach(op -> {
+            JsonObject kv = ((JsonObject) op).getJsonObject("KV");
+            if ("set".equals(kv.getString("Verb"))) {
+                results.add(new JsonObject().put("KV", new JsonObject().put("Key", kv.getString("Key")).put("ModifyIndex", 42)));
+            }
+        });
+        responses.get(transaction).onSuccess(results);
+    }
+
+    private static List<String> keys(JsonArray ops) {
+        List<String> keys = new ArrayList<>();
+        ops.forEach(op -> keys.add(((JsonObject) op).getJsonObject("KV").getString("Key")));
+        return keys;
+    }
+
+    private static List<String> keys(String... keys) {
+        List<String> list = new ArrayList<>();
+        for (String key : keys) {
+            list.add(key);
+        }
+        return list;
+    }
+}
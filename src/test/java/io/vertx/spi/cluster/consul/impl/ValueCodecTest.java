@@ -0,0 +1,93 @@
+package io.vertx.spi.cluster.consul.impl;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ValueCodecTest {
+
+    // compresses well.
+    private static final String LARGE_VALUE = repeat("{\"verticles\":[],\"group\":\"__DEFAULT__\"}", 50);
+
+    @Test
+    public void largeValueIsDeflatedBehindTheMarkerAndRoundTrips() {
+        ValueCodec codec = new ValueCodec(64);
+
+        byte[] encoded = codec.encode(LARGE_VALUE);
+
+        assertEquals((byte) 0xFF, encoded[0]);
+        assertTrue(encoded.length < LARGE_VALUE.length());
+        assertEquals(LARGE_VALUE, codec.decode(encoded));
+    }
+
+    @Test
+    public void valueBelowThresholdIsPlainUtf8() {
+        ValueCodec codec = new ValueCodec(LARGE_VALUE.length() + 1);
+
+        assertArrayEquals(LARGE_VALUE.getBytes(StandardCharsets.UTF_8), codec.encode(LARGE_VALUE));
+    }
+
+    @Test
+    public void disabledCompressionKeepsValuesPlain() {
+        ValueCodec codec = new ValueCodec(-1);
+
+        assertArrayEquals(LARGE_VALUE.getBytes(StandardCharsets.UTF_8), codec.encode(LARGE_VALUE));
+    }
+
+    @Test
+    public void incompressibleValueIsKeptPlain() {
+        ValueCodec codec = new ValueCodec(0);
+
+        assertArrayEquals("ab".getBytes(StandardCharsets.UTF_8), codec.encode("ab"));
+    }
+
+    @Test
+    public void decodingDoesNotDependOnTheThreshold() {
+        byte[] deflated = new ValueCodec(0).encode(LARGE_VALUE);
+        byte[] plain = new ValueCodec(-1).encode("żółw");
+
+        ValueCodec decoder = new ValueCodec(-1);
+        assertEquals(LARGE_VALUE, decoder.decode(deflated));
+        assertEquals("żółw", decoder.decode(plain));
+        assertEquals("", decoder.decode(new byte[0]));
+    }
+
+    @Test
+    public void serializedValueRoundTrips() {
+        ValueCodec codec = new ValueCodec(64);
+        byte[] serialized = ClusterSerialization.encode(LARGE_VALUE);
+
+        byte[] encoded = codec.encodeBytes(serialized);
+
+        assertEquals((byte) 0xFF, encoded[0]);
+        assertArrayEquals(serialized, codec.decodeBytes(encoded));
+        assertEquals(LARGE_VALUE, ClusterSerialization.decode(codec.decodeBytes(encoded)));
+        // stored by a node that doesn't compress.
+        assertArrayEquals(serialized, codec.decodeBytes(serialized));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedValueIsRejected() {
+        byte[] deflated = new ValueCodec(0).encode(LARGE_VALUE);
+
+        new ValueCodec(0).decode(Arrays.copyOf(deflated, deflated.length / 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidThresholdIsRejected() {
+        new ValueCodec(-2);
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}